@@ -0,0 +1,200 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Abstract superclass for {@link OverlapResolver} implementations.
+ *
+ * Provides default {@link #resolve(Lines, Junctions)} implementation that
+ * defaults verbosity to {@code false}.
+ *
+ * Lines can only overlap with lines they share a junction with, or whose end
+ * points lie within {@link #getInteractionDistance()} of their own. The
+ * lines are therefore partitioned into connected groups, which are resolved
+ * independently (and concurrently, unless verbose output is requested) by
+ * {@link #resolveGroup(Lines, Junctions, boolean)}. The results are joined in
+ * the order of the groups' first lines, and new lines get their IDs in that
+ * order, so the result does not depend on the scheduling of the groups.
+ *
+ * @author Mark Hiner <hinerm@gmail.com>
+ */
+public abstract class AbstractOverlapResolver implements OverlapResolver {
+
+	// Minimum number of groups per parallel band
+	private static final int MIN_BAND_GROUPS = 64;
+
+	@Override
+	public Lines resolve(final Lines lines, final Junctions junctions) {
+		return resolve(lines, junctions, false);
+	}
+
+	@Override
+	public Lines resolve(final Lines lines, final Junctions junctions,
+		final boolean verbose)
+	{
+		final List<Lines> groupLines = new ArrayList<Lines>();
+		final List<Junctions> groupJunctions = new ArrayList<Junctions>();
+		partition(lines, junctions, groupLines, groupJunctions);
+
+		final Lines[] resolved = new Lines[groupLines.size()];
+		final int bands = verbose ? 1 : Math.min(groupLines.size(), 4 * Parallel
+			.numBands(groupLines.size(), MIN_BAND_GROUPS));
+		Parallel.forEachBand(groupLines.size(), bands, new Parallel.BandTask() {
+
+			@Override
+			public void run(final int band, final int from, final int to) {
+				for (int g = from; g < to; g++) {
+					resolved[g] = resolveGroup(groupLines.get(g), groupJunctions.get(g),
+						verbose);
+				}
+			}
+		});
+
+		// Join the groups and give the new lines IDs from the range of the frame
+		final Map<Line, Boolean> original = new IdentityHashMap<Line, Boolean>();
+		for (final Line l : lines) {
+			original.put(l, Boolean.TRUE);
+		}
+		final Lines resolvedLines = new Lines(lines.getFrame());
+		for (final Lines group : resolved) {
+			for (final Line l : group) {
+				if (!original.containsKey(l)) {
+					l.setID(lines.nextID());
+					original.put(l, Boolean.TRUE);
+				}
+				resolvedLines.add(l);
+			}
+		}
+		resolvedLines.continueIDs(lines);
+
+		return resolvedLines;
+	}
+
+	/**
+	 * Resolves the overlap within one group of lines. New lines have to be
+	 * created with IDs from the given {@link Lines}; they are renumbered when
+	 * the groups are joined. This method may be called concurrently for
+	 * different groups.
+	 *
+	 * @param lines the lines of the group, in their original order
+	 * @param junctions the junctions between the lines of the group, in their
+	 *          original order
+	 * @return the resolved lines of the group
+	 */
+	protected abstract Lines resolveGroup(Lines lines, Junctions junctions,
+		boolean verbose);
+
+	/**
+	 * @return the distance below which the end points of two lines are
+	 *         considered to touch, even if there is no junction between the
+	 *         lines. The lines are then resolved in the same group.
+	 */
+	protected double getInteractionDistance() {
+		return 0;
+	}
+
+	/**
+	 * Splits the lines into the connected groups of lines that share a
+	 * junction or touch at their end points. The groups are sorted by their
+	 * first line.
+	 */
+	private void partition(final Lines lines, final Junctions junctions,
+		final List<Lines> groupLines, final List<Junctions> groupJunctions)
+	{
+		// Lines that only occur in junctions get indices after the lines.
+		final Map<Line, Integer> index = new IdentityHashMap<Line, Integer>();
+		for (int i = lines.size() - 1; i >= 0; i--) {
+			index.put(lines.get(i), i);
+		}
+		int num = lines.size();
+		final int[] junctionLine = new int[2 * junctions.size()];
+		for (int i = 0; i < junctions.size(); i++) {
+			final Line[] ends = { junctions.get(i).getLine1(), junctions.get(i)
+				.getLine2() };
+			for (int k = 0; k < 2; k++) {
+				Integer n = index.get(ends[k]);
+				if (n == null) {
+					n = num++;
+					index.put(ends[k], n);
+				}
+				junctionLine[2 * i + k] = n;
+			}
+		}
+
+		final UnionFind groups = new UnionFind(num);
+		for (int i = 0; i < lines.size(); i++) {
+			groups.union(i, index.get(lines.get(i)));
+		}
+		for (int i = 0; i < junctions.size(); i++) {
+			groups.union(junctionLine[2 * i], junctionLine[2 * i + 1]);
+		}
+
+		final double distance = getInteractionDistance();
+		if (distance > 0) {
+			final PointGrid ends = new PointGrid(distance);
+			final float[] x = new float[2 * lines.size()];
+			final float[] y = new float[2 * lines.size()];
+			for (int i = 0; i < lines.size(); i++) {
+				final Line l = lines.get(i);
+				x[2 * i] = l.getXCoordinates()[0];
+				y[2 * i] = l.getYCoordinates()[0];
+				x[2 * i + 1] = l.getXCoordinates()[l.getNumber() - 1];
+				y[2 * i + 1] = l.getYCoordinates()[l.getNumber() - 1];
+				ends.add(x[2 * i], y[2 * i], 2 * i);
+				ends.add(x[2 * i + 1], y[2 * i + 1], 2 * i + 1);
+			}
+			for (int p = 0; p < x.length; p++) {
+				final int n = ends.query(x[p], y[p], distance);
+				final int[] near = ends.getResult();
+				for (int k = 0; k < n; k++) {
+					final int q = near[k];
+					if (Math.abs(x[q] - x[p]) <= distance && Math.abs(y[q] -
+						y[p]) <= distance) groups.union(p / 2, q / 2);
+				}
+			}
+		}
+		groups.flatten();
+
+		// The root of a group is its smallest index, so numbering the roots in
+		// increasing order sorts the groups by their first line.
+		final int[] group = new int[num];
+		for (int i = 0; i < num; i++) {
+			if (groups.find(i) == i) {
+				group[i] = groupLines.size();
+				groupLines.add(new Lines(lines.getFrame()));
+				groupJunctions.add(new Junctions(junctions.getFrame()));
+			}
+			else group[i] = group[groups.find(i)];
+		}
+		for (int i = 0; i < lines.size(); i++) {
+			groupLines.get(group[i]).add(lines.get(i));
+		}
+		for (int i = 0; i < junctions.size(); i++) {
+			groupJunctions.get(group[junctionLine[2 * i]]).add(junctions.get(i));
+		}
+	}
+}
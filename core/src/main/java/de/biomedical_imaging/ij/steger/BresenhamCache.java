@@ -0,0 +1,267 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/* A cache of the search lines computed by the modified Bresenham algorithm
+   (see Width.bresenham) for a fixed search line length.
+
+   After the signs and the major axis of the direction have been factored
+   out, the pixels of a search line only depend on the slope q = dy/dx of the
+   direction and on the initial error e of the algorithm, which encodes the
+   sub-pixel position of the start point.  The slopes and the errors are
+   quantized into buckets, and for each bucket the pixel sequence is
+   computed once for the longest possible line.  Shorter lines are prefixes
+   of it.  Since the error terms of the algorithm grow monotonically with q
+   and e (also in floating point arithmetic), all directions of a bucket
+   yield the same pixels if the two extreme corners of the bucket do.  This
+   is checked when a bucket is first used; buckets for which it does not
+   hold, i.e., which contain a change of the pixel sequence, are marked and
+   the search line is computed directly.  The pixels returned are therefore
+   always exactly those of Width.bresenham.
+
+   Search lines that start in the center of a pixel (as in the width
+   extraction) have an initial error that only depends on the slope; they
+   are kept in a separate table with a finer quantization. */
+public class BresenhamCache {
+
+	/* Number of slope buckets for search lines starting at a pixel center. */
+	private static final int NUM_SLOPES_CENTERED = 1 << 12;
+	/* Number of slope and error buckets for all other search lines. */
+	private static final int NUM_SLOPES = 1 << 10;
+	private static final int NUM_ERRORS = 1 << 6;
+	/* The initial errors lie in [-ERROR_RANGE,ERROR_RANGE). */
+	private static final double ERROR_RANGE = 2.0;
+	/* Margin by which the error interval of a bucket is enlarged when it is
+	   validated, to account for rounding in the computation of the error. */
+	private static final double ERROR_MARGIN = 1e-9;
+
+	/* The pixels of a search line along the major (a) and minor (b) axis.
+	   After the i-th step along the major axis, end[i] pixels are done. */
+	private static class Pattern {
+		int[] a, b, end;
+	}
+
+	/* Marks buckets for which the search lines are computed directly. */
+	private static final Pattern INVALID = new Pattern();
+
+	private double length;
+	private int max_it;
+	private AtomicReferenceArray<Pattern> centered, shifted;
+
+	/**
+	 * @param length
+	 *            Length of the search lines
+	 */
+	public BresenhamCache(double length) {
+		this.length = length;
+		max_it = (int) Math.ceil(length);
+		centered = new AtomicReferenceArray<Pattern>(NUM_SLOPES_CENTERED);
+		shifted = new AtomicReferenceArray<Pattern>(NUM_SLOPES * NUM_ERRORS);
+	}
+
+	/**
+	 * Computes the pixels that are intersected by a half line less than length
+	 * away from the point (px,py) along the direction (nx,ny), like
+	 * Width.bresenham. The point (px,py) must lie within the pixel of the
+	 * origin, i.e., fabs(px) <= 0.5 and fabs(py) <= 0.5.
+	 * 
+	 * @return the number of pixels, whose offsets are returned in line_x and
+	 *         line_y
+	 */
+	public int bresenham(double nx, double ny, double px, double py,
+			int[] line_x, int[] line_y) {
+		int i, n, s1, s2, maxit, bucket;
+		boolean xchg, center;
+		double e, dx, dy, q, t;
+		Pattern p;
+
+		center = px == 0.0 && py == 0.0;
+		dx = Math.abs(nx);
+		dy = Math.abs(ny);
+		s1 = (int) Math.signum(nx);
+		s2 = (int) Math.signum(ny);
+		px *= s1;
+		py *= s2;
+		if (dy > dx) {
+			t = dx;
+			dx = dy;
+			dy = t;
+			t = px;
+			px = py;
+			py = t;
+			xchg = true;
+		} else {
+			xchg = false;
+		}
+		maxit = (int) Math.ceil(length * dx);
+		q = dy / dx;
+		e = (0.5 - px) * dy / dx - (0.5 - py);
+
+		p = INVALID;
+		if (maxit <= max_it && q >= 0.0 && q <= 1.0) {
+			if (center) {
+				bucket = Math.min((int) (q * NUM_SLOPES_CENTERED),
+						NUM_SLOPES_CENTERED - 1);
+				p = get(centered, bucket, true);
+			} else if (e >= -ERROR_RANGE && e < ERROR_RANGE) {
+				bucket = Math.min((int) (q * NUM_SLOPES), NUM_SLOPES - 1)
+						* NUM_ERRORS
+						+ Math.min((int) ((e + ERROR_RANGE) * (NUM_ERRORS / (2 * ERROR_RANGE))),
+								NUM_ERRORS - 1);
+				p = get(shifted, bucket, false);
+			}
+		}
+		if (p == INVALID)
+			return walk(q, e, maxit, s1, s2, xchg, line_x, line_y);
+
+		n = p.end[ maxit];
+		if (xchg) {
+			for (i = 0; i < n; i++) {
+				line_x[ i] = s1 * p.b[ i];
+				line_y[ i] = s2 * p.a[ i];
+			}
+		} else {
+			for (i = 0; i < n; i++) {
+				line_x[ i] = s1 * p.a[ i];
+				line_y[ i] = s2 * p.b[ i];
+			}
+		}
+		return n;
+	}
+
+	private Pattern get(AtomicReferenceArray<Pattern> table, int bucket,
+			boolean center) {
+		Pattern p;
+
+		p = table.get(bucket);
+		if (p == null) {
+			p = create(bucket, center);
+			if (!table.compareAndSet(bucket, null, p))
+				p = table.get(bucket);
+		}
+		return p;
+	}
+
+	/* Compute the pattern of a bucket, or INVALID if the extreme corners of
+	   the bucket give different pixels. */
+	private Pattern create(int bucket, boolean center) {
+		double q_lo, q_hi, e_lo, e_hi;
+		Pattern lo, hi;
+		int i, n;
+
+		if (center) {
+			q_lo = (double) bucket / NUM_SLOPES_CENTERED;
+			q_hi = (double) (bucket + 1) / NUM_SLOPES_CENTERED;
+			e_lo = 0.5 * q_lo - 0.5 - ERROR_MARGIN;
+			e_hi = 0.5 * q_hi - 0.5 + ERROR_MARGIN;
+		} else {
+			q_lo = (double) (bucket / NUM_ERRORS) / NUM_SLOPES;
+			q_hi = (double) (bucket / NUM_ERRORS + 1) / NUM_SLOPES;
+			e_lo = (double) (bucket % NUM_ERRORS) * (2 * ERROR_RANGE)
+					/ NUM_ERRORS - ERROR_RANGE - ERROR_MARGIN;
+			e_hi = (double) (bucket % NUM_ERRORS + 1) * (2 * ERROR_RANGE)
+					/ NUM_ERRORS - ERROR_RANGE + ERROR_MARGIN;
+		}
+		lo = pattern(q_lo, e_lo);
+		hi = pattern(q_hi, e_hi);
+		n = lo.end[ max_it];
+		if (hi.end[ max_it] != n)
+			return INVALID;
+		for (i = 0; i <= max_it; i++)
+			if (lo.end[ i] != hi.end[ i])
+				return INVALID;
+		for (i = 0; i < n; i++)
+			if (lo.a[ i] != hi.a[ i] || lo.b[ i] != hi.b[ i])
+				return INVALID;
+		return lo;
+	}
+
+	/* The search line along the major and minor axis for slope q and
+	   initial error e.  This is the inner loop of Width.bresenham. */
+	private Pattern pattern(double q, double e) {
+		int i, n, a, b;
+		Pattern p;
+
+		p = new Pattern();
+		p.a = new int[ 2 * max_it + 4];
+		p.b = new int[ 2 * max_it + 4];
+		p.end = new int[ max_it + 1];
+		a = 0;
+		b = 0;
+		n = 0;
+		for (i = 0; i <= max_it; i++) {
+			p.a[ n] = a;
+			p.b[ n] = b;
+			n++;
+			while (e >= -1e-8) {
+				b++;
+				e--;
+				if (e > -1) {
+					p.a[ n] = a;
+					p.b[ n] = b;
+					n++;
+				}
+			}
+			a++;
+			e += q;
+			p.end[ i] = n;
+		}
+		p.a = java.util.Arrays.copyOf(p.a, n);
+		p.b = java.util.Arrays.copyOf(p.b, n);
+		return p;
+	}
+
+	/* Compute a search line directly, exactly as Width.bresenham. */
+	private static int walk(double q, double e, int maxit, int s1, int s2,
+			boolean xchg, int[] line_x, int[] line_y) {
+		int i, n, x, y;
+
+		x = 0;
+		y = 0;
+		n = 0;
+		for (i = 0; i <= maxit; i++) {
+			line_x[ n] = x;
+			line_y[ n] = y;
+			n++;
+			while (e >= -1e-8) {
+				if (xchg)
+					x += s1;
+				else
+					y += s2;
+				e--;
+				if (e > -1) {
+					line_x[ n] = x;
+					line_y[ n] = y;
+					n++;
+				}
+			}
+			if (xchg)
+				y += s2;
+			else
+				x += s1;
+			e += q;
+		}
+		return n;
+	}
+}
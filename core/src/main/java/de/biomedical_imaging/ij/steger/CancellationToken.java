@@ -0,0 +1,68 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Allows to abort a running detection. The stages of the detection check the
+ * token at regular points (per row of the convolution and the line point
+ * extraction, per region of the linking and per line of the width
+ * extraction) and throw a {@link CancellationException} once it is
+ * cancelled. A token can be cancelled from any thread.
+ */
+public class CancellationToken {
+
+	/** A token that is never cancelled */
+	public static final CancellationToken NONE = new CancellationToken() {
+		@Override
+		public void cancel() {
+			throw new UnsupportedOperationException(
+					"The token NONE cannot be cancelled");
+		}
+	};
+
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Requests the detections that check this token to stop.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return true if {@link #cancel()} was called
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @throws CancellationException
+	 *             if the token is cancelled
+	 */
+	public void checkCancelled() {
+		if (cancelled)
+			throw new CancellationException("Detection cancelled");
+	}
+}
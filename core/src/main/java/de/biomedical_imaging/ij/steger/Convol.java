@@ -27,6 +27,19 @@ import org.apache.commons.lang3.mutable.MutableLong;
 public class Convol {
 	/* 1/sqrt(2*PI) */
 	private final double  SQRT_2_PI_INV = 0.398942280401432677939946059935;
+
+	/* Checked regularly to abort the computation. */
+	private final CancellationToken cancel;
+
+	public Convol()
+	{
+	  this(CancellationToken.NONE);
+	}
+
+	public Convol(CancellationToken cancel)
+	{
+	  this.cancel = cancel;
+	}
 	
 	/* Functions to compute the integral, and the 0th and 1st derivative of the
 	   Gaussian function 1/(sqrt(2*PI)*sigma)*exp(-0.5*x^2/sigma^2) */
@@ -137,51 +150,100 @@ public class Convol {
 	   by another appropriate mask in convolve_cols_gauss to yield the final
 	   result k.  At the border of the image the gray values are mirrored. */
 
-	/* Convolve the rows of an image with the derivatives of a Gaussian. */
-	private void convolve_rows_gauss(float[] image, double[] mask, int n, float[] h,int width,int height)
+	/* Convolve the rows of an image with the derivatives of a Gaussian.  The
+	   grey values are read from the typed pixel array and converted to
+	   floating point on the fly.  For every row the offsets of the 2*n+1
+	   (mirrored) input rows are computed once, so the same loop handles the
+	   inner and the border regions.  The rows are split into bands that are
+	   convolved in parallel. */
+	private void convolve_rows_gauss(final PixelData image, final double[] mask, final int n, final float[] h,final int width,final int height)
 	{
-	  int      j, r, c, l;
-	  double    sum;
+	  Parallel.forEachBand(height, Parallel.numRowBands(width,height), new Parallel.BandTask() {
+	    @Override
+	    public void run(int band, int from, int to) {
+	      int      j;
+	      int[]    rows;
 
-	  /* Inner region */
-	  for (r=n; r<height-n; r++) {
-	    for (c=0; c<width; c++) {
-	      l = LinesUtil.LINCOOR(r,c,width);
-	      sum = 0.0;
-	      for (j=-n;j<=n;j++)
-	        sum += (double)(image[(l+j*width)])*mask[(j+n)];
-	      h[ l] = (float) sum;
+	      rows = new int[2*n+1];
+	      for (int r=from; r<to; r++) {
+	        cancel.checkCancelled();
+	        for (j=-n;j<=n;j++)
+	          rows[j+n] = image.offset+LinesUtil.LINCOOR(LinesUtil.BR(r+j,height),0,image.stride);
+	        if (image.bytes != null)
+	          convolve_row(image.bytes,rows,mask,n,h,LinesUtil.LINCOOR(r,0,width),width);
+	        else if (image.shorts != null)
+	          convolve_row(image.shorts,rows,mask,n,h,LinesUtil.LINCOOR(r,0,width),width);
+	        else
+	          convolve_row(image.floats,rows,mask,n,h,LinesUtil.LINCOOR(r,0,width),width);
+	      }
 	    }
+	  });
+	}
+
+	/* Convolve one row of an unsigned 8-bit image; rows holds the offsets of
+	   the input rows and l the offset of the output row. */
+	private void convolve_row(byte[] image, int[] rows, double[] mask, int n, float[] h, int l, int width)
+	{
+	  int      j, c;
+	  double    sum;
+
+	  for (c=0; c<width; c++) {
+	    sum = 0.0;
+	    for (j=0;j<=2*n;j++)
+	      sum += (double)(image[ rows[j]+c] & 0xff)*mask[j];
+	    h[ l+c] = (float) sum;
 	  }
-	  /* Border regions */
-	  for (r=0; r<n; r++) {
-	    for (c=0; c<width; c++) {
-	      l = LinesUtil.LINCOOR(r,c,width);
-	      sum = 0.0;
-	      for (j=-n;j<=n;j++)
-	        sum += (double)(image[ LinesUtil.LINCOOR(LinesUtil.BR(r+j,height),c,width)])*mask[(j+n)];
-	      h[ l] = (float) sum;
-	    }
+	}
+
+	/* Convolve one row of an unsigned 16-bit image. */
+	private void convolve_row(short[] image, int[] rows, double[] mask, int n, float[] h, int l, int width)
+	{
+	  int      j, c;
+	  double    sum;
+
+	  for (c=0; c<width; c++) {
+	    sum = 0.0;
+	    for (j=0;j<=2*n;j++)
+	      sum += (double)(image[ rows[j]+c] & 0xffff)*mask[j];
+	    h[ l+c] = (float) sum;
 	  }
-	  for (r=height-n; r<height; r++) {
-	    for (c=0; c<width; c++) {
-	      l = LinesUtil.LINCOOR(r,c,width);
-	      sum = 0.0;
-	      for (j=-n;j<=n;j++)
-	        sum += (double)(image[ LinesUtil.LINCOOR(LinesUtil.BR(r+j,height),c,width)])*mask[(j+n)];
-	      h[ l] = (float) sum;
-	    }
+	}
+
+	/* Convolve one row of a floating point image. */
+	private void convolve_row(float[] image, int[] rows, double[] mask, int n, float[] h, int l, int width)
+	{
+	  int      j, c;
+	  double    sum;
+
+	  for (c=0; c<width; c++) {
+	    sum = 0.0;
+	    for (j=0;j<=2*n;j++)
+	      sum += (double)(image[ rows[j]+c])*mask[j];
+	    h[ l+c] = (float) sum;
 	  }
 	}
 	
-	/* Convolve the columns of an image with the derivatives of a Gaussian. */
-	private void convolve_cols_gauss(float[] h, double[] mask,int n, float[] k, int width, int height)
+	/* Convolve the columns of an image with the derivatives of a Gaussian.
+	   The rows are split into bands that are convolved in parallel. */
+	private void convolve_cols_gauss(final float[] h, final double[] mask,final int n, final float[] k, final int width, final int height)
+	{
+	  Parallel.forEachBand(height, Parallel.numRowBands(width,height), new Parallel.BandTask() {
+	    @Override
+	    public void run(int band, int from, int to) {
+	      convolve_cols_gauss(h,mask,n,k,width,from,to);
+	    }
+	  });
+	}
+
+	/* Convolve the columns of the rows [from,to) of an image. */
+	private void convolve_cols_gauss(float[] h, double[] mask,int n, float[] k, int width, int from, int to)
 	{
 	  int      j, r, c, l;
 	  double    sum;
 
 	  /* Inner region */
-	  for (r=0; r<height; r++) {
+	  for (r=from; r<to; r++) {
+	    cancel.checkCancelled();
 	    for (c=n; c<width-n; c++) {
 	      l = LinesUtil.LINCOOR(r,c,width);
 	      sum = 0.0;
@@ -191,7 +253,7 @@ public class Convol {
 	    }
 	  }
 	  /* Border regions */
-	  for (r=0; r<height; r++) {
+	  for (r=from; r<to; r++) {
 	    for (c=0; c<n; c++) {
 	      l = LinesUtil.LINCOOR(r,c,width);
 	      sum = 0.0;
@@ -200,7 +262,7 @@ public class Convol {
 	      k[ l] = (float)sum;
 	    }
 	  }
-	  for (r=0; r<height; r++) {
+	  for (r=from; r<to; r++) {
 	    for (c=width-n; c<width; c++) {
 	      l = LinesUtil.LINCOOR(r,c,width);
 	      sum = 0.0;
@@ -213,6 +275,13 @@ public class Convol {
 	
 	/* Convolve an image with a derivative of the Gaussian. */
 	public void convolve_gauss(float[] image,float[] k,int width,int height,double sigma,int deriv_type)
+	{
+	  convolve_gauss(PixelData.of(image,width,height),k,width,height,sigma,deriv_type);
+	}
+
+	/* Convolve an image given in its acquired pixel type with a derivative of
+	   the Gaussian. */
+	public void convolve_gauss(PixelData image,float[] k,int width,int height,double sigma,int deriv_type)
 	{
 	  double[]  hr = null, hc = null;
 	  double[]  maskr, maskc;
@@ -931,21 +931,36 @@ public class Correct {
 			  }
 			};
 	
-	private static Correction[][] ctable =null;
-	
-	public static Correction getCTable(int i, int j){
-		if(ctable==null){
-			init();
-		}
-		
-		return ctable[i][j];
-	}
-	
-	private static void init(){
-		ctable = new Correction[21][41];
-		
-		for(int i = 0; i < 21; i++){
-			for(int j = 0; j < 41; j++){
+	/* Dimensions of the correction table: 21 gradient ratios r_est (rows) and
+	   41 line widths w_est (columns). */
+	private static final int NUM_RE = 21;
+	private static final int NUM_WE = 41;
+
+	/* Fields of the correction table that are interpolated. */
+	private static final int FIELD_W = 0;
+	private static final int FIELD_H = 1;
+	private static final int FIELD_CORRECTION = 2;
+	private static final int FIELD_W_STRONG = 3;
+	private static final int FIELD_W_WEAK = 4;
+	private static final int NUM_FIELDS = 5;
+
+	/* The interpolated fields of ctableh in a flat array, one plane of
+	   NUM_RE*NUM_WE entries per field.  The entry (i_re,i_we) of field f is
+	   table[f*NUM_RE*NUM_WE+i_re*NUM_WE+i_we].  The table is built when the
+	   class is initialized and never modified, so it can be read
+	   concurrently. */
+	private static final double[] table = new double[NUM_FIELDS*NUM_RE*NUM_WE];
+	private static final boolean[] valid = new boolean[NUM_RE*NUM_WE];
+	private static final Correction[][] ctable = new Correction[NUM_RE][NUM_WE];
+
+	static {
+		for(int i = 0; i < NUM_RE; i++){
+			for(int j = 0; j < NUM_WE; j++){
+				int l = i*NUM_WE+j;
+				for(int f = 0; f < NUM_FIELDS; f++){
+					table[f*NUM_RE*NUM_WE+l] = ctableh[i][j][2+f];
+				}
+				valid[l] = ctableh[i][j][7]==1;
 				ctable[i][j] = new Correction(ctableh[i][j][0], 
 						ctableh[i][j][1], 
 						ctableh[i][j][2], 
@@ -956,37 +971,19 @@ public class Correct {
 						(ctableh[i][j][7]==1));
 			}
 		}
-		
 	}
 	
-	/* interpolate bilinearly between i_re and i_re+1 with parameter a and between
-	   i_we and i_we+1 with parameter b on the member field in the correction
-	   table. */
-	// i=0 field w
-	// i=1 field = h
-	// i=2 field=correction
-	// i=3 field=w_strong
-	// i=4 field=w_weak;
-	private static double BILINEAR(double a, double b,int i_re, int i_we,int i){
-		double value = 0;
-		switch(i){
-			case 0: value = ((1-b)*((1-a)*getCTable(i_re,i_we).w+a*getCTable(i_re,i_we+1).w)+ 
-					   b*((1-a)*getCTable(i_re+1,i_we).w+a*getCTable(i_re+1,i_we+1).w));
-			break;
-			case 1: value = ((1-b)*((1-a)*getCTable(i_re,i_we).h+a*getCTable(i_re,i_we+1).h)+ 
-					   b*((1-a)*getCTable(i_re+1,i_we).h+a*getCTable(i_re+1,i_we+1).h));
-			break;
-			case 2: value = ((1-b)*((1-a)*getCTable(i_re,i_we).correction+a*getCTable(i_re,i_we+1).correction)+ 
-					   b*((1-a)*getCTable(i_re+1,i_we).correction+a*getCTable(i_re+1,i_we+1).correction));
-			break;
-			case 3: value = ((1-b)*((1-a)*getCTable(i_re,i_we).w_strong+a*getCTable(i_re,i_we+1).w_strong)+ 
-					   b*((1-a)*getCTable(i_re+1,i_we).w_strong+a*getCTable(i_re+1,i_we+1).w_strong));
-			break;
-			case 4: value = ((1-b)*((1-a)*getCTable(i_re,i_we).w_weak+a*getCTable(i_re,i_we+1).w_weak)+ 
-					   b*((1-a)*getCTable(i_re+1,i_we).w_weak+a*getCTable(i_re+1,i_we+1).w_weak));
-			break;
-		}
-	 return value;
+	public static Correction getCTable(int i, int j){
+		return ctable[i][j];
+	}
+	
+	/* Interpolate the field f bilinearly between i_re and i_re+1 with
+	   parameter b and between i_we and i_we+1 with parameter a, where l is the
+	   index of the entry (i_re,i_we) within a plane. */
+	private static double bilinear(int f, double a, double b, int l){
+		int p = f*NUM_RE*NUM_WE+l;
+		return ((1-b)*((1-a)*table[p]+a*table[p+1])+ 
+				b*((1-a)*table[p+NUM_WE]+a*table[p+NUM_WE+1]));
 	}
 
 	
@@ -997,7 +994,7 @@ public class Correct {
 	   bilinear interpolation from the table ctable. */
 	static boolean line_corrections(double sigma, double w_est, double r_est, MutableDouble w, MutableDouble h, MutableDouble correct, MutableDouble w_strong, MutableDouble w_weak)
 	{
-	  int   i_we,i_re;
+	  int   i_we,i_re,l;
 	  boolean   is_valid;
 	  double a,b;
 
@@ -1016,16 +1013,16 @@ public class Correct {
 	    i_we = 39;
 	  if (i_re == 20)
 	    i_re = 19;
-	  is_valid = getCTable(i_re, i_we).is_valid && getCTable(i_re,(i_we+1)).is_valid &&
-			  getCTable( (i_re+1), i_we).is_valid && getCTable( (i_re+1), (i_we+1)).is_valid;
+	  l = i_re*NUM_WE+i_we;
+	  is_valid = valid[l] && valid[l+1] && valid[l+NUM_WE] && valid[l+NUM_WE+1];
 	  a = (w_est-2)*10-i_we;
 	  b = r_est*20-i_re;
 	  
-	  w.setValue(BILINEAR(a, b, i_re, i_we, 0)*sigma);
-	  h.setValue(BILINEAR(a, b, i_re, i_we, 1));
-	  correct.setValue(BILINEAR(a, b, i_re, i_we, 2)*sigma);
-	  w_strong.setValue(BILINEAR(a, b, i_re, i_we, 3)*sigma);
-	  w_weak.setValue(BILINEAR(a, b, i_re, i_we, 4)*sigma);
+	  w.setValue(bilinear(FIELD_W, a, b, l)*sigma);
+	  h.setValue(bilinear(FIELD_H, a, b, l));
+	  correct.setValue(bilinear(FIELD_CORRECTION, a, b, l)*sigma);
+	  w_strong.setValue(bilinear(FIELD_W_STRONG, a, b, l)*sigma);
+	  w_weak.setValue(bilinear(FIELD_W_WEAK, a, b, l)*sigma);
 	  
 	  return !is_valid;
 	}
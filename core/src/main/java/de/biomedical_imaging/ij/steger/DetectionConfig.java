@@ -0,0 +1,196 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+/**
+ * Immutable set of parameters for {@link LineDetectionEngine}. The with
+ * methods return a modified copy, so one configuration can be shared by any
+ * number of threads.
+ */
+public final class DetectionConfig {
+
+	private final double sigma;
+	private final double upperThresh;
+	private final double lowerThresh;
+	private final boolean darkLine;
+	private final boolean correctPosition;
+	private final boolean estimateWidth;
+	private final boolean extendLine;
+	private final OverlapOption overlapOption;
+	private final boolean verbose;
+
+	/**
+	 * Creates a configuration for bright lines without position correction,
+	 * width estimation, line extension or overlap resolution.
+	 *
+	 * @param sigma
+	 *            A value which depends on the line width: sigma >=
+	 *            width/(2*sqrt(3))
+	 * @param upperThresh
+	 *            Upper hysteresis threshold used in the linking algorithm
+	 * @param lowerThresh
+	 *            Lower hysteresis threshold used in the linking algorithm
+	 */
+	public DetectionConfig(double sigma, double upperThresh, double lowerThresh) {
+		this(sigma, upperThresh, lowerThresh, false, false, false, false,
+				OverlapOption.NONE, false);
+	}
+
+	/**
+	 * @param sigma
+	 *            A value which depends on the line width: sigma >=
+	 *            width/(2*sqrt(3))
+	 * @param upperThresh
+	 *            Upper hysteresis threshold used in the linking algorithm
+	 * @param lowerThresh
+	 *            Lower hysteresis threshold used in the linking algorithm
+	 * @param darkLine
+	 *            True if the line darker than the background
+	 * @param correctPosition
+	 *            Determines whether the line width and position correction
+	 *            should be applied
+	 * @param estimateWidth
+	 *            Determines whether the line width should be extracted
+	 * @param extendLine
+	 *            Extends the detect lines to find more junction points
+	 * @param overlapOption
+	 *            Method to resolve overlapping lines
+	 * @param verbose
+	 *            Log the steps of the junction and overlap processing
+	 */
+	public DetectionConfig(double sigma, double upperThresh,
+			double lowerThresh, boolean darkLine, boolean correctPosition,
+			boolean estimateWidth, boolean extendLine,
+			OverlapOption overlapOption, boolean verbose) {
+		this.sigma = sigma;
+		this.upperThresh = upperThresh;
+		this.lowerThresh = lowerThresh;
+		this.darkLine = darkLine;
+		this.correctPosition = correctPosition;
+		this.estimateWidth = estimateWidth;
+		this.extendLine = extendLine;
+		this.overlapOption = overlapOption == null ? OverlapOption.NONE
+				: overlapOption;
+		this.verbose = verbose;
+	}
+
+	public double getSigma() {
+		return sigma;
+	}
+
+	public double getUpperThresh() {
+		return upperThresh;
+	}
+
+	public double getLowerThresh() {
+		return lowerThresh;
+	}
+
+	public boolean isDarkLine() {
+		return darkLine;
+	}
+
+	public boolean isCorrectPosition() {
+		return correctPosition;
+	}
+
+	public boolean isEstimateWidth() {
+		return estimateWidth;
+	}
+
+	public boolean isExtendLine() {
+		return extendLine;
+	}
+
+	public OverlapOption getOverlapOption() {
+		return overlapOption;
+	}
+
+	public boolean isVerbose() {
+		return verbose;
+	}
+
+	public DetectionConfig withSigma(double sigma) {
+		return new DetectionConfig(sigma, upperThresh, lowerThresh, darkLine,
+				correctPosition, estimateWidth, extendLine, overlapOption,
+				verbose);
+	}
+
+	public DetectionConfig withThresholds(double upperThresh,
+			double lowerThresh) {
+		return new DetectionConfig(sigma, upperThresh, lowerThresh, darkLine,
+				correctPosition, estimateWidth, extendLine, overlapOption,
+				verbose);
+	}
+
+	public DetectionConfig withDarkLine(boolean darkLine) {
+		return new DetectionConfig(sigma, upperThresh, lowerThresh, darkLine,
+				correctPosition, estimateWidth, extendLine, overlapOption,
+				verbose);
+	}
+
+	public DetectionConfig withCorrectPosition(boolean correctPosition) {
+		return new DetectionConfig(sigma, upperThresh, lowerThresh, darkLine,
+				correctPosition, estimateWidth, extendLine, overlapOption,
+				verbose);
+	}
+
+	public DetectionConfig withEstimateWidth(boolean estimateWidth) {
+		return new DetectionConfig(sigma, upperThresh, lowerThresh, darkLine,
+				correctPosition, estimateWidth, extendLine, overlapOption,
+				verbose);
+	}
+
+	public DetectionConfig withExtendLine(boolean extendLine) {
+		return new DetectionConfig(sigma, upperThresh, lowerThresh, darkLine,
+				correctPosition, estimateWidth, extendLine, overlapOption,
+				verbose);
+	}
+
+	public DetectionConfig withOverlapOption(OverlapOption overlapOption) {
+		return new DetectionConfig(sigma, upperThresh, lowerThresh, darkLine,
+				correctPosition, estimateWidth, extendLine, overlapOption,
+				verbose);
+	}
+
+	/**
+	 * @param scale
+	 *            Size of the scaled image relative to the original image,
+	 *            e.g., 0.5 for an image that is downsampled by 2
+	 * @return the configuration that detects the same lines in the scaled
+	 *         image: sigma is scaled with the image. The response to a line
+	 *         grows with the inverse square of the scale, since the line
+	 *         width and sigma shrink together, so the thresholds are divided
+	 *         by the squared scale.
+	 */
+	public DetectionConfig scaled(double scale) {
+		return new DetectionConfig(sigma * scale, upperThresh / (scale * scale),
+				lowerThresh / (scale * scale), darkLine, correctPosition,
+				estimateWidth, extendLine, overlapOption, verbose);
+	}
+
+	public DetectionConfig withVerbose(boolean verbose) {
+		return new DetectionConfig(sigma, upperThresh, lowerThresh, darkLine,
+				correctPosition, estimateWidth, extendLine, overlapOption,
+				verbose);
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * The result of one call of {@link LineDetectionEngine#detect}. It does not
+ * share any state with other results.
+ */
+public final class DetectionResult {
+
+	private final Lines lines;
+	private final Junctions junctions;
+	private final Options options;
+	private final Hysteresis hysteresis;
+	private final long time;
+
+	DetectionResult(Lines lines, Junctions junctions, Options options,
+			Hysteresis hysteresis, long time) {
+		this.lines = lines;
+		this.junctions = junctions;
+		this.options = options;
+		this.hysteresis = hysteresis;
+		this.time = time;
+	}
+
+	/**
+	 * @return the detected lines
+	 */
+	public Lines getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return the junctions between the detected lines
+	 */
+	public Junctions getJunctions() {
+		return junctions;
+	}
+
+	/**
+	 * @return the parameters which were used for the detection
+	 */
+	public Options getUsedOptions() {
+		return options;
+	}
+
+	/**
+	 * @return the regions of candidate line points, i.e., the number of
+	 *         regions and how many of them were linked
+	 */
+	public Hysteresis getHysteresis() {
+		return hysteresis;
+	}
+
+	/**
+	 * @return the number of detected lines
+	 */
+	public int getNumLines() {
+		return lines.size();
+	}
+
+	/**
+	 * @return the number of junctions
+	 */
+	public int getNumJunctions() {
+		return junctions.size();
+	}
+
+	/**
+	 * @return the time the detection took in nanoseconds
+	 */
+	public long getDetectionTime() {
+		return time;
+	}
+
+	/**
+	 * Moves the lines and junctions by (dx,dy). This maps the result of a
+	 * detection in a part of an image to the coordinates of the whole image.
+	 */
+	public void translate(float dx, float dy) {
+		Set<float[]> done = newIdentitySet();
+		for (Line l : getAllLines()) {
+			transform(l.col, 1, dx, done);
+			transform(l.row, 1, dy, done);
+		}
+		for (Junction j : junctions) {
+			j.x += dx;
+			j.y += dy;
+		}
+	}
+
+	/**
+	 * Maps the lines and junctions of a detection in an image that was
+	 * downsampled by the given factor to the coordinates of the original
+	 * image. The centers of the pixels are mapped onto each other, the line
+	 * widths are scaled with the image and the responses are scaled like the
+	 * thresholds (see {@link DetectionConfig#scaled}).
+	 */
+	public void upsample(int factor) {
+		float offset = 0.5f * (factor - 1);
+		Set<float[]> done = newIdentitySet();
+		for (Line l : getAllLines()) {
+			transform(l.col, factor, offset, done);
+			transform(l.row, factor, offset, done);
+			transform(l.width_l, factor, 0, done);
+			transform(l.width_r, factor, 0, done);
+			transform(l.response, 1.0f / (factor * factor), 0, done);
+		}
+		for (Junction j : junctions) {
+			j.x = j.x * factor + offset;
+			j.y = j.y * factor + offset;
+		}
+	}
+
+	/*
+	 * Maps the values v of an array to v*scale+shift. Lines may share their
+	 * arrays, so each array is only mapped once.
+	 */
+	private static void transform(float[] values, float scale, float shift,
+			Set<float[]> done) {
+		if (values == null || !done.add(values))
+			return;
+		for (int i = 0; i < values.length; i++)
+			values[i] = values[i] * scale + shift;
+	}
+
+	private static <T> Set<T> newIdentitySet() {
+		return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+	}
+
+	/* The lines of the result and of its junctions, each line once. */
+	private Set<Line> getAllLines() {
+		Set<Line> all = newIdentitySet();
+		all.addAll(lines);
+		for (Junction j : junctions) {
+			if (j.getLine1() != null)
+				all.add(j.getLine1());
+			if (j.getLine2() != null)
+				all.add(j.getLine2());
+		}
+		return all;
+	}
+}
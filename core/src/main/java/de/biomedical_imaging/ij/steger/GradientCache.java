@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/* The absolute value of the gradient of an image, computed on demand.  The
+   width of a line is only searched for in a neighborhood of 2.5*sigma of
+   the line, so on sparse images most of the gradient image is never read.
+   The image is therefore split into square tiles that are computed the
+   first time one of their pixels is accessed and kept afterwards.  Tiles
+   may be requested concurrently; if two threads compute the same tile, one
+   of the (identical) results is kept. */
+public class GradientCache {
+
+	/* The tiles are TILE_SIZE x TILE_SIZE pixels. */
+	private static final int TILE_SHIFT = 6;
+	private static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+	private float[] dx, dy;
+	private int width, height;
+	private int tiles_c;
+	private AtomicReferenceArray<float[]> tiles;
+
+	/**
+	 * @param dx
+	 *            First derivative of the image in row direction
+	 * @param dy
+	 *            First derivative of the image in column direction
+	 * @param width
+	 *            Width of the image
+	 * @param height
+	 *            Height of the image
+	 */
+	public GradientCache(float[] dx, float[] dy, int width, int height) {
+		int tiles_r;
+
+		this.dx = dx;
+		this.dy = dy;
+		this.width = width;
+		this.height = height;
+		tiles_r = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+		tiles_c = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+		tiles = new AtomicReferenceArray<float[]>(tiles_r * tiles_c);
+	}
+
+	/**
+	 * @return the absolute value of the gradient at the pixel (r,c)
+	 */
+	public float get(int r, int c) {
+		int t;
+		float[] tile;
+
+		t = (r >> TILE_SHIFT) * tiles_c + (c >> TILE_SHIFT);
+		tile = tiles.get(t);
+		if (tile == null)
+			tile = compute_tile(t, r >> TILE_SHIFT, c >> TILE_SHIFT);
+		return tile[ ((r & (TILE_SIZE - 1)) << TILE_SHIFT) + (c & (TILE_SIZE - 1))];
+	}
+
+	/**
+	 * Computes the tiles that cover the rectangle of rows r_min to r_max and
+	 * columns c_min to c_max (inclusive, clipped to the image) in advance.
+	 */
+	public void precompute(int r_min, int c_min, int r_max, int c_max) {
+		int tr, tc;
+
+		r_min = Math.max(0, r_min) >> TILE_SHIFT;
+		c_min = Math.max(0, c_min) >> TILE_SHIFT;
+		r_max = Math.min(height - 1, r_max) >> TILE_SHIFT;
+		c_max = Math.min(width - 1, c_max) >> TILE_SHIFT;
+		for (tr = r_min; tr <= r_max; tr++) {
+			for (tc = c_min; tc <= c_max; tc++) {
+				if (tiles.get(tr * tiles_c + tc) == null)
+					compute_tile(tr * tiles_c + tc, tr, tc);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of tiles that have been computed so far
+	 */
+	public int getNumComputedTiles() {
+		int i, n;
+
+		n = 0;
+		for (i = 0; i < tiles.length(); i++)
+			if (tiles.get(i) != null)
+				n++;
+		return n;
+	}
+
+	private float[] compute_tile(int t, int tr, int tc) {
+		int r, c, r_end, c_end, l;
+		float[] tile;
+
+		tile = new float[ TILE_SIZE * TILE_SIZE];
+		r_end = Math.min(height, (tr + 1) << TILE_SHIFT);
+		c_end = Math.min(width, (tc + 1) << TILE_SHIFT);
+		for (r = tr << TILE_SHIFT; r < r_end; r++) {
+			for (c = tc << TILE_SHIFT; c < c_end; c++) {
+				l = LinesUtil.LINCOOR(r, c, width);
+				tile[ ((r & (TILE_SIZE - 1)) << TILE_SHIFT) + (c & (TILE_SIZE - 1))] = (float) Math
+						.sqrt(dx[ l] * dx[ l] + dy[ l] * dy[ l]);
+			}
+		}
+		if (tiles.compareAndSet(t, null, tile))
+			return tile;
+		return tiles.get(t);
+	}
+}
@@ -0,0 +1,318 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import de.biomedical_imaging.ij.steger.LinesUtil.contour_class;
+
+/**
+ * Resolve overlap between lines by treating the junctions as the nodes of a
+ * graph whose edges are the line segments. At each junction the segment ends
+ * are paired greedily by how straight they continue each other, and the
+ * paired segments are joined into chains with a union-find structure. Every
+ * segment ends up in exactly one chain, so unlike
+ * {@link SlopeOverlapResolver} an overlapping segment is not duplicated, but
+ * the cost is O(L log L) in the number of lines.
+ */
+public class GraphOverlapResolver extends AbstractOverlapResolver {
+
+	// Maximum distance of a junction from the end point of a line for the line
+	// to end at the junction
+	private static final float MAX_END_DISTANCE = 1.0f;
+
+	// Number of line points from the junction used to estimate the direction
+	// of a segment
+	private static final int SLOPE_DIST = 5;
+
+	// Two segment ends are only paired if the joined line bends by less than
+	// this angle at the junction
+	private static final double MAX_BEND_ANGLE = Math.PI / 3;
+
+	@Override
+	public Lines resolve(final Lines lines, final Junctions junctions,
+		final boolean verbose)
+	{
+		if (verbose) LinesUtil.LOGGER.info("### Overlap detection using Graph heuristic");
+
+		return super.resolve(lines, junctions, verbose);
+	}
+
+	@Override
+	protected Lines resolveGroup(final Lines lines, final Junctions junctions,
+		final boolean verbose)
+	{
+		if (junctions.isEmpty()) return lines;
+
+		final int n = lines.size();
+		final Map<Line, Integer> index = new IdentityHashMap<Line, Integer>();
+		for (int i = n - 1; i >= 0; i--) {
+			index.put(lines.get(i), i);
+		}
+
+		// 1. Collect the segment ends (2 * line + 0 for the start, 2 * line + 1
+		// for the end) that meet at each junction point. Junctions at the same
+		// position form one node.
+		final Map<Long, Integer> nodeOf = new HashMap<Long, Integer>();
+		final int[] entryNode = new int[2 * junctions.size()];
+		final int[] entryEnd = new int[2 * junctions.size()];
+		int numEntries = 0;
+		for (final Junction j : junctions) {
+			final long key = ((long) Float.floatToIntBits(j.getX()) << 32) |
+				(Float.floatToIntBits(j.getY()) & 0xffffffffL);
+			Integer node = nodeOf.get(key);
+			if (node == null) {
+				node = nodeOf.size();
+				nodeOf.put(key, node);
+			}
+			for (final Line l : new Line[] { j.getLine1(), j.getLine2() }) {
+				final Integer i = index.get(l);
+				if (i == null) continue;
+				final int end = endAt(l, j.getX(), j.getY());
+				if (end < 0) continue;
+				entryNode[numEntries] = node;
+				entryEnd[numEntries] = 2 * i + end;
+				numEntries++;
+			}
+		}
+
+		// 2. Compressed adjacency: the ends at node k are
+		// ends[first[k]..first[k+1]), sorted by line
+		final int numNodes = nodeOf.size();
+		final int[] first = new int[numNodes + 1];
+		for (int e = 0; e < numEntries; e++) {
+			first[entryNode[e] + 1]++;
+		}
+		for (int k = 0; k < numNodes; k++) {
+			first[k + 1] += first[k];
+		}
+		final int[] ends = new int[numEntries];
+		final int[] next = Arrays.copyOf(first, numNodes);
+		for (int e = 0; e < numEntries; e++) {
+			ends[next[entryNode[e]]++] = entryEnd[e];
+		}
+		final boolean[] atJunction = new boolean[2 * n];
+		for (int k = 0; k < numNodes; k++) {
+			Arrays.sort(ends, first[k], first[k + 1]);
+			for (int e = first[k]; e < first[k + 1]; e++) {
+				atJunction[ends[e]] = true;
+			}
+		}
+
+		// 3. Pair the straightest continuations at each node
+		final int[] partner = new int[2 * n];
+		Arrays.fill(partner, -1);
+		final UnionFind chains = new UnionFind(n);
+		final double maxCos = -Math.cos(MAX_BEND_ANGLE);
+		for (int k = 0; k < numNodes; k++) {
+			final int from = first[k];
+			final int to = first[k + 1];
+			// an end that is listed twice (by two junctions) is only paired once
+			final float[][] dir = new float[to - from][];
+			for (int e = from; e < to; e++) {
+				if (e > from && ends[e] == ends[e - 1]) continue;
+				dir[e - from] = direction(lines.get(ends[e] / 2), ends[e] % 2);
+			}
+
+			// candidate pairs, sorted by straightness
+			final int numPairs = (to - from) * (to - from - 1) / 2;
+			final long[] pairs = new long[numPairs];
+			int p = 0;
+			for (int a = from; a < to; a++) {
+				if (dir[a - from] == null) continue;
+				for (int b = a + 1; b < to; b++) {
+					if (dir[b - from] == null || ends[a] / 2 == ends[b] / 2) continue;
+					final double cos = dir[a - from][0] * dir[b - from][0] +
+						dir[a - from][1] * dir[b - from][1];
+					if (cos >= maxCos) continue;
+					// cos is in [-1,maxCos), so the key orders by straightness first
+					// and by the position of the pair second
+					final long rank = (long) ((cos + 1) * (1 << 20));
+					pairs[p++] = (rank << 40) | ((long) (a - from) << 20) | (b - from);
+				}
+			}
+			Arrays.sort(pairs, 0, p);
+			for (int q = 0; q < p; q++) {
+				final int a = ends[from + (int) ((pairs[q] >> 20) & 0xfffff)];
+				final int b = ends[from + (int) (pairs[q] & 0xfffff)];
+				if (partner[a] >= 0 || partner[b] >= 0) continue;
+				// do not close a chain on itself
+				if (chains.find(a / 2) == chains.find(b / 2)) continue;
+				partner[a] = b;
+				partner[b] = a;
+				chains.union(a / 2, b / 2);
+			}
+		}
+		chains.flatten();
+
+		// 4. Walk each chain from one of its free ends and join its segments. A
+		// chain is emitted at the position of its first line, which is its root.
+		final Lines resolved = new Lines(lines.getFrame());
+		for (int i = 0; i < n; i++) {
+			if (chains.find(i) != i) continue;
+			if (partner[2 * i] < 0 && partner[2 * i + 1] < 0) {
+				resolved.add(lines.get(i));
+				continue;
+			}
+
+			// find a free end of the chain
+			int start = 2 * i;
+			int end = partner[start];
+			while (end >= 0) {
+				start = end ^ 1;
+				end = partner[start];
+			}
+
+			if (verbose) {
+				final StringBuilder sb = new StringBuilder();
+				sb.append("Merging lines: ");
+				for (int e = start; e >= 0; e = partner[e ^ 1]) {
+					sb.append(lines.get(e / 2).getID());
+					sb.append(" ");
+				}
+				LinesUtil.LOGGER.info(sb.toString());
+			}
+			resolved.add(join(lines, partner, start, atJunction));
+		}
+		resolved.continueIDs(lines);
+
+		return resolved;
+	}
+
+	/**
+	 * @return 0 if the line starts at (x,y), 1 if it ends there, and -1 if
+	 *         neither end point is close to (x,y)
+	 */
+	private int endAt(final Line l, final float x, final float y) {
+		final int end = l.getStartOrdEndPosition(x, y);
+		if (Math.abs(l.col[end] - x) > MAX_END_DISTANCE || Math.abs(l.row[end] -
+			y) > MAX_END_DISTANCE) return -1;
+		return end == 0 ? 0 : 1;
+	}
+
+	/**
+	 * @return the unit vector from the given end of the line into the line
+	 */
+	private float[] direction(final Line l, final int end) {
+		final int p0 = end == 0 ? 0 : l.num - 1;
+		final int p1 = end == 0 ? Math.min(SLOPE_DIST, l.num - 1) : Math.max(0,
+			l.num - 1 - SLOPE_DIST);
+		final float dx = l.col[p1] - l.col[p0];
+		final float dy = l.row[p1] - l.row[p0];
+		final float len = (float) Math.sqrt(dx * dx + dy * dy);
+		if (len == 0) return null;
+		return new float[] { dx / len, dy / len };
+	}
+
+	/**
+	 * Joins the segments of the chain that starts with the segment end start
+	 * into one line. Segments that are entered at their end are reversed.
+	 */
+	private Line join(final Lines lines, final int[] partner, final int start,
+		final boolean[] atJunction)
+	{
+		int num = 0;
+		int frame = 0;
+		// the optional values are only kept if the segments have them
+		boolean hasIntensity = false, hasAsymmetry = false, hasWidth = false;
+		// seeded only if all segments are (see Line.seeded)
+		boolean seeded = true;
+		for (int e = start; e >= 0; e = partner[e ^ 1]) {
+			final Line l = lines.get(e / 2);
+			num += l.num;
+			seeded &= l.seeded;
+			hasIntensity |= l.intensity != null;
+			hasAsymmetry |= l.asymmetry != null;
+			hasWidth |= l.width_l != null;
+		}
+
+		final Line merged = new Line(lines.nextID());
+		merged.row = new float[num];
+		merged.col = new float[num];
+		merged.angle = new float[num];
+		merged.response = new float[num];
+		merged.intensity = hasIntensity ? new float[num] : null;
+		merged.asymmetry = hasAsymmetry ? new float[num] : null;
+		merged.width_l = hasWidth ? new float[num] : null;
+		merged.width_r = hasWidth ? new float[num] : null;
+		merged.seeded = seeded;
+
+		int pos = 0;
+		int last = start;
+		for (int e = start; e >= 0; e = partner[e ^ 1]) {
+			final Line l = lines.get(e / 2);
+			final boolean reverse = e % 2 == 1;
+			frame = l.getFrame();
+			for (int k = 0; k < l.num; k++) {
+				final int src = reverse ? l.num - 1 - k : k;
+				// the junction point is shared with the previous segment
+				if (pos > 0 && k == 0 && merged.col[pos - 1] == l.col[src] &&
+					merged.row[pos - 1] == l.row[src]) continue;
+				merged.row[pos] = l.row[src];
+				merged.col[pos] = l.col[src];
+				merged.response[pos] = l.response[src];
+				merged.angle[pos] = l.angle[src];
+				if (l.intensity != null) merged.intensity[pos] = l.intensity[src];
+				if (l.width_l != null) {
+					merged.width_l[pos] = reverse ? l.width_r[src] : l.width_l[src];
+					merged.width_r[pos] = reverse ? l.width_l[src] : l.width_r[src];
+				}
+				if (l.asymmetry != null) merged.asymmetry[pos] = reverse
+					? -l.asymmetry[src] : l.asymmetry[src];
+				// the normal points to the other side if the line is reversed
+				if (reverse) {
+					merged.angle[pos] += Math.PI;
+					if (merged.angle[pos] >= 2 * Math.PI) merged.angle[pos] -= 2 *
+						Math.PI;
+				}
+				pos++;
+			}
+			last = e ^ 1;
+		}
+		if (pos < num) {
+			merged.row = Arrays.copyOf(merged.row, pos);
+			merged.col = Arrays.copyOf(merged.col, pos);
+			merged.angle = Arrays.copyOf(merged.angle, pos);
+			merged.response = Arrays.copyOf(merged.response, pos);
+			if (hasIntensity) merged.intensity = Arrays.copyOf(merged.intensity, pos);
+			if (hasAsymmetry) merged.asymmetry = Arrays.copyOf(merged.asymmetry, pos);
+			if (hasWidth) {
+				merged.width_l = Arrays.copyOf(merged.width_l, pos);
+				merged.width_r = Arrays.copyOf(merged.width_r, pos);
+			}
+		}
+		merged.num = pos;
+		merged.setFrame(frame);
+
+		final boolean startJunc = atJunction[start];
+		final boolean endJunc = atJunction[last];
+		if (startJunc && endJunc) merged.setContourClass(contour_class.cont_both_junc);
+		else if (startJunc) merged.setContourClass(contour_class.cont_start_junc);
+		else if (endJunc) merged.setContourClass(contour_class.cont_end_junc);
+		else merged.setContourClass(contour_class.cont_no_junc);
+
+		return merged;
+	}
+}
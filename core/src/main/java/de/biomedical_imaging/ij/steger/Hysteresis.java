@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+/* Hysteresis thresholding of the line points.  The line points (ismax > 0)
+   are grouped into 8-connected regions.  A region is kept if it contains at
+   least one point above the high threshold (ismax == 2); the points of all
+   other regions are removed from ismax, since the linking algorithm could
+   never reach them.  Because the linking only steps to 8-neighbors, lines
+   can never cross from one region into another, which allows the regions to
+   be linked independently of each other. */
+public class Hysteresis {
+
+	/** index of the region of each pixel, or -1 if the pixel is not a line
+	    point of a kept region */
+	int[] region;
+	/** number of 8-connected regions of line points */
+	int num_regions;
+	/** number of regions that contain a point above the high threshold */
+	int num_strong;
+	/** number of line points that were removed */
+	int num_removed;
+
+	/**
+	 * @return the number of 8-connected regions of line points
+	 */
+	public int getNumRegions() {
+		return num_regions;
+	}
+
+	/**
+	 * @return the number of regions that contain a point above the high
+	 *         threshold, i.e., the number of regions that are linked
+	 */
+	public int getNumStrongRegions() {
+		return num_strong;
+	}
+
+	/**
+	 * @return the number of line points that were removed because they are not
+	 *         connected to a point above the high threshold
+	 */
+	public int getNumRemovedPoints() {
+		return num_removed;
+	}
+
+	/* Compute the regions of the line points in ismax and remove the points
+	   that are not connected to a point above the high threshold.  The kept
+	   regions are numbered in the order of their first pixel. */
+	static void hysteresis(byte[] ismax, int width, int height, Hysteresis out)
+	{
+	  hysteresis(ismax,width,height,out,
+	             Parallel.numRowBands(width,height));
+	}
+
+	static void hysteresis(final byte[] ismax, final int width, int height,
+	                       Hysteresis out, int bands)
+	{
+	  int   r, c, l, root, num_regions, num_strong, num_removed;
+	  final int[] first;
+	  final UnionFind uf;
+	  java.util.BitSet strong;
+	  int[] region;
+
+	  /* Label the bands of rows in parallel.  Every band only joins pixels of
+	     its own rows, so the trees of different bands are disjoint. */
+	  uf = new UnionFind(width*height);
+	  if (bands > height)
+	    bands = Math.max(1,height);
+	  first = new int[bands];
+	  Parallel.forEachBand(height, bands, new Parallel.BandTask() {
+	    @Override
+	    public void run(int band, int from, int to) {
+	      first[band] = from;
+	      label_rows(ismax,width,from,to,uf);
+	    }
+	  });
+
+	  /* Join the regions across the borders of the bands. */
+	  for (int b=1; b<bands; b++) {
+	    r = first[b];
+	    if (r == 0 || r >= height)
+	      continue;
+	    for (c=0; c<width; c++) {
+	      l = LinesUtil.LINCOOR(r,c,width);
+	      if (ismax[l] == 0)
+	        continue;
+	      join_upper(ismax,width,r,c,uf);
+	    }
+	  }
+	  uf.flatten();
+
+	  /* Find the regions that contain a point above the high threshold. */
+	  strong = new java.util.BitSet();
+	  num_regions = 0;
+	  for (l=0; l<ismax.length; l++) {
+	    if (ismax[l] == 0)
+	      continue;
+	    if (uf.parent[l] == l)
+	      num_regions++;
+	    if (ismax[l] == 2)
+	      strong.set(uf.parent[l]);
+	  }
+
+	  /* Number the kept regions and remove the points of all other regions.
+	     The roots are the first pixels of their regions, so the parent array
+	     can be overwritten in place. */
+	  region = uf.parent;
+	  num_strong = 0;
+	  num_removed = 0;
+	  for (l=0; l<ismax.length; l++) {
+	    if (ismax[l] == 0) {
+	      region[l] = -1;
+	      continue;
+	    }
+	    root = region[l];
+	    if (root == l)
+	      region[l] = strong.get(l) ? num_strong++ : -1;
+	    else
+	      region[l] = region[root];
+	    if (region[l] < 0) {
+	      ismax[l] = 0;
+	      num_removed++;
+	    }
+	  }
+
+	  out.region = region;
+	  out.num_regions = num_regions;
+	  out.num_strong = num_strong;
+	  out.num_removed = num_removed;
+	}
+
+	/* Join the line points of the rows r_start to r_end-1 with their left
+	   and upper neighbors inside the same rows. */
+	private static void label_rows(byte[] ismax, int width, int r_start,
+	                               int r_end, UnionFind uf)
+	{
+	  int   r, c, l;
+
+	  for (r=r_start; r<r_end; r++) {
+	    for (c=0; c<width; c++) {
+	      l = LinesUtil.LINCOOR(r,c,width);
+	      if (ismax[l] == 0)
+	        continue;
+	      if (c > 0 && ismax[l-1] != 0)
+	        uf.union(l-1,l);
+	      if (r > r_start)
+	        join_upper(ismax,width,r,c,uf);
+	    }
+	  }
+	}
+
+	/* Join the line point (r,c) with its three neighbors in the row above. */
+	private static void join_upper(byte[] ismax, int width, int r, int c,
+	                               UnionFind uf)
+	{
+	  int   dc, l, u;
+
+	  l = LinesUtil.LINCOOR(r,c,width);
+	  for (dc=-1; dc<=1; dc++) {
+	    if (c+dc < 0 || c+dc >= width)
+	      continue;
+	    u = LinesUtil.LINCOOR(r-1,c+dc,width);
+	    if (ismax[u] != 0)
+	      uf.union(u,l);
+	  }
+	}
+}
@@ -0,0 +1,332 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The response of the line detector for a whole frame (see
+ * {@link ResponseField}) in {@link OffHeapArray}s, for frames that are too
+ * large for the heap or have more than 2^31 pixels. The pixel (x,y) has the
+ * index y*width+x. The field is computed tile by tile with a halo of the
+ * radius of the largest Gaussian kernel, which is all that the response of a
+ * pixel depends on, so it is the same as the response of the whole frame.
+ * The whole field is detected tile by tile with
+ * {@link TiledDetectionEngine#detect(LargeResponseField, int, DetectionConfig)};
+ * single windows of it can be copied into a {@link ResponseField} and
+ * detected with {@link LineDetectionEngine#detect(ResponseField, int, DetectionConfig)}.
+ */
+public class LargeResponseField implements Closeable {
+
+	/** Default width and height of the tiles in which the field is computed */
+	public static final int DEFAULT_TILE_SIZE = 1024;
+
+	private final int width, height;
+	private final double sigma;
+	private final int mode;
+	/* The derivatives in the order r, c, rr, rc, cc */
+	private final OffHeapArray[] k = new OffHeapArray[5];
+	private final OffHeapArray ev, nx, ny, px, py;
+	private final OffHeapArray candidate;
+
+	private LargeResponseField(int width, int height, double sigma, int mode,
+			File directory) throws IOException {
+		this.width = width;
+		this.height = height;
+		this.sigma = sigma;
+		this.mode = mode;
+		long n = (long) width * height;
+		// Release the arrays that are allocated already if one fails
+		List<OffHeapArray> arrays = new ArrayList<OffHeapArray>();
+		boolean allocated = false;
+		try {
+			for (int i = 0; i < k.length; i++)
+				k[i] = keep(arrays, OffHeapArray.allocateFloats(n, directory));
+			ev = keep(arrays, OffHeapArray.allocateFloats(n, directory));
+			nx = keep(arrays, OffHeapArray.allocateFloats(n, directory));
+			ny = keep(arrays, OffHeapArray.allocateFloats(n, directory));
+			px = keep(arrays, OffHeapArray.allocateFloats(n, directory));
+			py = keep(arrays, OffHeapArray.allocateFloats(n, directory));
+			candidate = keep(arrays, OffHeapArray.allocateBytes(n, directory));
+			allocated = true;
+		} finally {
+			if (!allocated)
+				for (OffHeapArray a : arrays)
+					a.close();
+		}
+	}
+
+	private static OffHeapArray keep(List<OffHeapArray> arrays, OffHeapArray a) {
+		arrays.add(a);
+		return a;
+	}
+
+	/**
+	 * Computes the response of the line detector for a frame.
+	 * 
+	 * @param source
+	 *            Provides the pixels of the frame
+	 * @param config
+	 *            The sigma and line mode of the response
+	 * @param directory
+	 *            Directory of the files to which the field is mapped, or
+	 *            null to keep it in memory outside of the heap
+	 * @throws IllegalArgumentException
+	 *             if sigma is out of range for a tile
+	 * @throws IOException
+	 *             if the files cannot be created or mapped
+	 */
+	public static LargeResponseField compute(
+			TiledDetectionEngine.ImageSource source, DetectionConfig config,
+			File directory) throws IOException {
+		return compute(source, config, directory, DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * As {@link #compute(TiledDetectionEngine.ImageSource, DetectionConfig, File)}
+	 * with the given size of the tiles.
+	 */
+	public static LargeResponseField compute(
+			final TiledDetectionEngine.ImageSource source,
+			final DetectionConfig config, File directory, final int tileSize)
+			throws IOException {
+		final int width = source.getWidth();
+		final int height = source.getHeight();
+		final LargeResponseField field = new LargeResponseField(width,
+				height, config.getSigma(), config.isDarkLine() ? LinesUtil.MODE_DARK
+						: LinesUtil.MODE_LIGHT, directory);
+		final int halo = LineDetectionEngine.getKernelRadius(config.getSigma());
+		final int cols = (width + tileSize - 1) / tileSize;
+		int rows = (height + tileSize - 1) / tileSize;
+		final LineDetectionEngine engine = new LineDetectionEngine();
+
+		// Every band computes whole tiles, one at a time
+		boolean computed = false;
+		try {
+			Parallel.forEachBand(cols * rows, Parallel.numBands(cols * rows, 1),
+					new Parallel.BandTask() {
+						@Override
+						public void run(int band, int from, int to) {
+							int previous = Parallel.setBandLimit(1);
+							try {
+								for (int t = from; t < to; t++) {
+									int x = (t % cols) * tileSize;
+									int y = (t / cols) * tileSize;
+									int hx = Math.max(0, x - halo);
+									int hy = Math.max(0, y - halo);
+									PixelData pixels = source.getRegion(hx, hy,
+											Math.min(width, x + tileSize + halo) - hx,
+											Math.min(height, y + tileSize + halo) - hy);
+									field.store(engine.computeResponse(pixels,
+											config, CancellationToken.NONE), hx, hy,
+											x - hx, y - hy, Math.min(tileSize, width - x),
+											Math.min(tileSize, height - y));
+								}
+							} finally {
+								Parallel.setBandLimit(previous);
+							}
+						}
+					});
+			computed = true;
+		} finally {
+			if (!computed)
+				field.close();
+		}
+		return field;
+	}
+
+	/*
+	 * Copies the rectangle (x,y,w,h) of the response of the tile with the
+	 * upper left corner (tx,ty) into the field.
+	 */
+	private void store(ResponseField f, int tx, int ty, int x, int y, int w,
+			int h) {
+		float[] row = new float[w];
+		byte[] bytes = new byte[w];
+		for (int r = y; r < y + h; r++) {
+			int l = r * f.width + x;
+			long i = (long) (ty + r) * width + tx + x;
+			for (int d = 0; d < k.length; d++)
+				k[d].setFloats(i, f.k[d], l, w);
+			ev.setFloats(i, f.ev, l, w);
+			nx.setFloats(i, f.nx, l, w);
+			ny.setFloats(i, f.ny, l, w);
+			/*
+			 * The positions are stored as offsets from their pixel, since a
+			 * float is not precise enough for the coordinates of a large frame
+			 */
+			for (int c = 0; c < w; c++)
+				row[c] = f.candidate[l + c] != 0 ? f.px[l + c] - r : 0;
+			px.setFloats(i, row, 0, w);
+			for (int c = 0; c < w; c++)
+				row[c] = f.candidate[l + c] != 0 ? f.py[l + c] - (x + c) : 0;
+			py.setFloats(i, row, 0, w);
+			System.arraycopy(f.candidate, l, bytes, 0, w);
+			candidate.setBytes(i, bytes, 0, w);
+		}
+	}
+
+	/**
+	 * Copies a window of the field into a {@link ResponseField}. The window
+	 * has the response of the whole frame, also at its borders. The
+	 * positions of the lines that are detected in the window are relative
+	 * to its upper left corner (see {@link DetectionResult#translate}).
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the window is not within the frame or has more than
+	 *             2^31-1 pixels
+	 */
+	public ResponseField getWindow(int x, int y, int w, int h) {
+		if (x < 0 || y < 0 || w <= 0 || h <= 0 || x + w > width
+				|| y + h > height || (long) w * h > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Window " + x + "," + y + " "
+					+ w + "x" + h + " does not fit the field of size "
+					+ width + "x" + height);
+		ResponseField f = new ResponseField(w, h, sigma, mode);
+		for (int r = 0; r < h; r++) {
+			int l = r * w;
+			long i = (long) (y + r) * width + x;
+			for (int d = 0; d < k.length; d++)
+				k[d].getFloats(i, f.k[d], l, w);
+			ev.getFloats(i, f.ev, l, w);
+			nx.getFloats(i, f.nx, l, w);
+			ny.getFloats(i, f.ny, l, w);
+			px.getFloats(i, f.px, l, w);
+			py.getFloats(i, f.py, l, w);
+			candidate.getBytes(i, f.candidate, l, w);
+			for (int c = 0; c < w; c++) {
+				if (f.candidate[l + c] != 0) {
+					f.px[l + c] += r;
+					f.py[l + c] += c;
+				}
+			}
+		}
+		return f;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public double getSigma() {
+		return sigma;
+	}
+
+	/**
+	 * @return {@link LinesUtil#MODE_LIGHT} or {@link LinesUtil#MODE_DARK}
+	 */
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return the index of the pixel (x,y)
+	 */
+	public long index(int x, int y) {
+		return (long) y * width + x;
+	}
+
+	/**
+	 * @param d
+	 *            0 to 4 for the derivatives r, c, rr, rc and cc
+	 * @return the derivative of the smoothed frame at the given index
+	 */
+	public float getDerivative(int d, long index) {
+		return k[d].getFloat(index);
+	}
+
+	/**
+	 * @return the second directional derivative across the line
+	 */
+	public float getEigenvalue(long index) {
+		return ev.getFloat(index);
+	}
+
+	/**
+	 * @return the row component of the normal of a line point
+	 */
+	public float getNormalX(long index) {
+		return nx.getFloat(index);
+	}
+
+	/**
+	 * @return the column component of the normal of a line point
+	 */
+	public float getNormalY(long index) {
+		return ny.getFloat(index);
+	}
+
+	/**
+	 * @return the sub-pixel row of a line point in the frame
+	 */
+	public double getPositionX(long index) {
+		return index / width + (double) px.getFloat(index);
+	}
+
+	/**
+	 * @return the sub-pixel column of a line point in the frame
+	 */
+	public double getPositionY(long index) {
+		return index % width + (double) py.getFloat(index);
+	}
+
+	/**
+	 * @return true if the pixel contains the maximum of the second
+	 *         directional derivative across a line
+	 */
+	public boolean isCandidate(long index) {
+		return candidate.getByte(index) != 0;
+	}
+
+	/**
+	 * @return true if the field was computed with the sigma and line mode of
+	 *         the configuration
+	 */
+	public boolean matches(DetectionConfig config) {
+		return sigma == config.getSigma()
+				&& mode == (config.isDarkLine() ? LinesUtil.MODE_DARK
+						: LinesUtil.MODE_LIGHT);
+	}
+
+	/**
+	 * Releases the arrays of the field.
+	 */
+	@Override
+	public void close() {
+		for (OffHeapArray a : k)
+			a.close();
+		ev.close();
+		nx.close();
+		ny.close();
+		px.close();
+		py.close();
+		candidate.close();
+	}
+}
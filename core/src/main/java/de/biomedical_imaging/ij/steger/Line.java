@@ -22,7 +22,7 @@
 
 package de.biomedical_imaging.ij.steger;
 
-import ij.IJ;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** This class holds one extracted line.  The field num contains the number of
    points in the line.  The coordinates of the line points are given in the
@@ -70,16 +70,26 @@ public class Line {
 	/** intensity of the line point */
 	float[] intensity;          
 	
+	/** true if the line was started at a seeded point below the high
+	    threshold (see Position.detect_lines); false for a whole image */
+	boolean seeded;
+	
 	/** contour class (e.g., closed, no_junc) */
 	private LinesUtil.contour_class cont_class; 
 	
-	static int idCounter = 0;
+	private static final AtomicInteger idCounter = new AtomicInteger();
 	private int id;
 	private int frame;
 	public Line() {
-		// TODO Auto-generated constructor stub
-		assignID();
-		
+		this(idCounter.getAndIncrement());
+	}
+	
+	/**
+	 * Creates a line with the given ID, e.g., one that was taken from the ID
+	 * range of its {@link Lines}.
+	 */
+	Line(int id) {
+		this.id = id;
 	}
 	
 	public LinesUtil.contour_class getContourClass(){
@@ -192,12 +202,19 @@ public class Line {
 		return length;
 	}
 	
-	private synchronized  void assignID(){
-		this.id = idCounter;
-		idCounter++;
+	void setID(int id){
+		this.id = id;
+	}
+	
+	/**
+	 * Reserves n consecutive IDs that are not used by any other line.
+	 * @return the first reserved ID
+	 */
+	static int reserveIDs(int n){
+		return idCounter.getAndAdd(n);
 	}
 	
 	static void resetCounter(){
-		idCounter = 0;
+		idCounter.set(0);
 	}
 }
@@ -0,0 +1,936 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.mutable.MutableInt;
+
+
+/**
+ * Detects lines and their junctions in an image. The engine has no state:
+ * every call of {@link #detect} works on its own data and returns it in a
+ * {@link DetectionResult}, so one engine can be used by any number of threads
+ * at once.
+ */
+public class LineDetectionEngine {
+	/* Maximum distance of a junction from a line that runs through it */
+	private static final double JUNCTION_LINE_DISTANCE = 0.1;
+	/* Maximum distance of two junctions that are treated as the same point */
+	private static final double SAME_POSITION_DISTANCE = 0.01;
+
+	/**
+	 * Detects the lines in an image.
+	 * 
+	 * @param pixels
+	 *            The grey values of the image, row by row. They are not
+	 *            modified.
+	 * @param width
+	 *            Width of the image
+	 * @param height
+	 *            Height of the image
+	 * @param frame
+	 *            Slice number that is assigned to the lines and junctions
+	 * @param config
+	 *            Parameters of the detection
+	 * @return the lines, junctions and statistics of the detection
+	 * @throws IllegalArgumentException
+	 *             if sigma is out of range for the image
+	 */
+	public DetectionResult detect(float[] pixels, int width, int height,
+			int frame, DetectionConfig config) {
+		return detect(PixelData.of(pixels, width, height), frame, config);
+	}
+
+	/**
+	 * As {@link #detect(float[], int, int, int, DetectionConfig)} for an
+	 * image with unsigned 8-bit grey values.
+	 */
+	public DetectionResult detect(byte[] pixels, int width, int height,
+			int frame, DetectionConfig config) {
+		return detect(PixelData.of(pixels, width, height), frame, config);
+	}
+
+	/**
+	 * As {@link #detect(float[], int, int, int, DetectionConfig)} for an
+	 * image with unsigned 16-bit grey values.
+	 */
+	public DetectionResult detect(short[] pixels, int width, int height,
+			int frame, DetectionConfig config) {
+		return detect(PixelData.of(pixels, width, height), frame, config);
+	}
+
+	/**
+	 * As {@link #detect(float[], int, int, int, DetectionConfig)}. The pixels
+	 * are read in their own type; they are converted to floating point
+	 * within the first convolution pass and never copied.
+	 */
+	public DetectionResult detect(PixelData pixels, int frame,
+			DetectionConfig config) {
+		return detect(pixels, frame, config, CancellationToken.NONE);
+	}
+
+	/**
+	 * As {@link #detect(PixelData, int, DetectionConfig)}, but aborts with a
+	 * {@link java.util.concurrent.CancellationException} once the token is
+	 * cancelled.
+	 */
+	public DetectionResult detect(PixelData pixels, int frame,
+			DetectionConfig config, CancellationToken cancel) {
+		return detect(pixels, null, frame, config, cancel);
+	}
+
+	/**
+	 * As {@link #detect(PixelData, int, DetectionConfig, CancellationToken)},
+	 * but only finds line points within a mask, e.g., the region of interest
+	 * of the image cropped to its bounding box.
+	 * 
+	 * @param mask
+	 *            One value per pixel, row by row; the pixels with a value
+	 *            other than 0 belong to the mask. If null, the whole image is
+	 *            searched.
+	 * @throws IllegalArgumentException
+	 *             if sigma is out of range for the image or the size of the
+	 *             mask differs from the image
+	 */
+	public DetectionResult detect(PixelData pixels, byte[] mask, int frame,
+			DetectionConfig config, CancellationToken cancel) {
+		DetectionResult result = detectFrame(pixels, mask, frame, config,
+				cancel);
+		// Move the frame local IDs to a range that is not used by other frames
+		Lines lines = result.getLines();
+		lines.rebaseIDs(Line.reserveIDs(lines.getNumIDs()));
+		return result;
+	}
+
+	/*
+	 * Detects the lines of a frame without reserving IDs for them. The lines
+	 * are numbered from 0; the caller has to move them to their final ID
+	 * range with Lines.rebaseIDs.
+	 */
+	DetectionResult detectFrame(PixelData pixels, byte[] mask, int frame,
+			DetectionConfig config, CancellationToken cancel) {
+		long start = System.nanoTime();
+		return new Detection(config, cancel).detect(
+				computeResponse(pixels, mask, config, cancel), null, frame,
+				start);
+	}
+
+	/*
+	 * As detectFrame for a response that was computed before. The line
+	 * points with seed[l] != 0 count as points above the high threshold (see
+	 * Position.detect_lines); seed may be null.
+	 */
+	DetectionResult detectFrame(ResponseField response, byte[] seed,
+			int frame, DetectionConfig config, CancellationToken cancel) {
+		return new Detection(config, cancel).detect(response, seed, frame,
+				System.nanoTime());
+	}
+
+	/*
+	 * As detectFrame for a response, but the lines and junctions are
+	 * returned as they are linked and before the junctions and contour
+	 * classes are reconstructed and the overlaps resolved. Only the
+	 * positions of the junctions are meaningful. The lines of parts of an
+	 * image are detected like this and reconstructed together once they
+	 * are merged.
+	 */
+	DetectionResult detectLinked(ResponseField response, byte[] seed,
+			int frame, DetectionConfig config, CancellationToken cancel) {
+		return new Detection(config, cancel).link(response, seed, frame,
+				System.nanoTime());
+	}
+
+	/*
+	 * Does the steps of detectFrame that follow the linking for lines and
+	 * junctions as returned by detectLinked. The junctions refer to their
+	 * lines by cont1 and cont2. The lines are modified.
+	 */
+	DetectionResult reconstruct(DetectionResult linked, DetectionConfig config,
+			CancellationToken cancel) {
+		return new Detection(config, cancel).reconstruct(linked,
+				System.nanoTime());
+	}
+
+	/**
+	 * Computes the response of the line detector for an image, i.e., the
+	 * derivatives of the image and the strength, normal and sub-pixel
+	 * position of the line points. The response depends only on the image,
+	 * sigma and whether dark or bright lines are detected; it can be kept and
+	 * passed to {@link #detect(ResponseField, int, DetectionConfig)} to detect
+	 * the lines with other thresholds.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if sigma is out of range for the image
+	 */
+	public ResponseField computeResponse(PixelData pixels,
+			DetectionConfig config) {
+		return computeResponse(pixels, config, CancellationToken.NONE);
+	}
+
+	/**
+	 * As {@link #computeResponse(PixelData, DetectionConfig)}, but aborts
+	 * with a {@link java.util.concurrent.CancellationException} once the
+	 * token is cancelled.
+	 */
+	public ResponseField computeResponse(PixelData pixels,
+			DetectionConfig config, CancellationToken cancel) {
+		return computeResponse(pixels, null, config, cancel);
+	}
+
+	/**
+	 * As {@link #computeResponse(PixelData, DetectionConfig, CancellationToken)},
+	 * but only the pixels within the mask can become line points (see
+	 * {@link #detect(PixelData, byte[], int, DetectionConfig, CancellationToken)}).
+	 */
+	public ResponseField computeResponse(PixelData pixels, byte[] mask,
+			DetectionConfig config, CancellationToken cancel) {
+		check_sigma(config.getSigma(), pixels.getWidth(), pixels.getHeight());
+		if (mask != null
+				&& mask.length != pixels.getWidth() * pixels.getHeight())
+			throw new IllegalArgumentException("Mask has " + mask.length
+					+ " values, image has " + pixels.getWidth() + "x"
+					+ pixels.getHeight() + " pixels");
+		return new Position(cancel).compute_response(pixels, mask, pixels.getWidth(),
+				pixels.getHeight(), config.getSigma(),
+				config.isDarkLine() ? LinesUtil.MODE_DARK : LinesUtil.MODE_LIGHT);
+	}
+
+	/**
+	 * Detects the lines in an image of which the response was computed by
+	 * {@link #computeResponse}. Only the thresholding, linking and the steps
+	 * after it are done. The response is not modified, so it can be used for
+	 * any number of detections, also at the same time.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the response was computed with another sigma or line mode
+	 */
+	public DetectionResult detect(ResponseField response, int frame,
+			DetectionConfig config) {
+		return detect(response, frame, config, CancellationToken.NONE);
+	}
+
+	/**
+	 * As {@link #detect(ResponseField, int, DetectionConfig)}, but aborts
+	 * with a {@link java.util.concurrent.CancellationException} once the
+	 * token is cancelled.
+	 */
+	public DetectionResult detect(ResponseField response, int frame,
+			DetectionConfig config, CancellationToken cancel) {
+		if (!response.matches(config))
+			throw new IllegalArgumentException(
+					"Response was computed for another sigma or line mode");
+		DetectionResult result = new Detection(config, cancel).detect(
+				response, null, frame, System.nanoTime());
+		Lines lines = result.getLines();
+		lines.rebaseIDs(Line.reserveIDs(lines.getNumIDs()));
+		return result;
+	}
+
+	/**
+	 * @return the radius of the largest Gaussian derivative kernel for sigma.
+	 *         A part of an image that is detected on its own needs a halo of
+	 *         this size, so that the response within the part is the same as
+	 *         in the whole image.
+	 */
+	public static int getKernelRadius(double sigma) {
+		return LinesUtil.MASK_SIZE(LinesUtil.MAX_SIZE_MASK_2, sigma);
+	}
+
+	private static void check_sigma(double sigma, int width, int height) {
+		int min_dim;
+		min_dim = width < height ? width : height;
+		if (sigma < 0.4)
+			throw new IllegalArgumentException(LinesUtil.ERR_SOR + " < 0.4");
+		if (LinesUtil.MASK_SIZE(LinesUtil.MAX_SIZE_MASK_2, sigma) >= min_dim)
+			throw new IllegalArgumentException(LinesUtil.ERR_SOR + " too large for image size");
+	}
+
+	/* The state of a single detection. */
+	private static class Detection {
+		private final DetectionConfig config;
+		private final boolean isDarkLine;
+		private final boolean doCorrectPosition;
+		private final boolean doEstimateWidth;
+		private final boolean doExtendLine;
+		private final boolean bechatty;
+		private Options opts = null;
+		private Junctions junctions;
+		private Hysteresis hysteresis;
+		private BitSet alreadyProcessedJunctionPoints;
+		private final CancellationToken cancel;
+
+		Detection(DetectionConfig config, CancellationToken cancel) {
+			this.config = config;
+			this.cancel = cancel;
+			this.isDarkLine = config.isDarkLine();
+			this.doCorrectPosition = config.isCorrectPosition();
+			this.doEstimateWidth = config.isEstimateWidth();
+			this.doExtendLine = config.isExtendLine();
+			this.bechatty = config.isVerbose();
+		}
+
+		DetectionResult detect(ResponseField response, byte[] seed, int frame,
+				long start) {
+			return reconstruct(link(response, seed, frame, start), start);
+		}
+
+		DetectionResult link(ResponseField response, byte[] seed, int frame,
+				long start) {
+			junctions = new Junctions(frame);
+			Lines lines = get_lines(config.getSigma(), config.getUpperThresh(),
+					config.getLowerThresh(), response, seed, frame, junctions,
+					config.getOverlapOption());
+			return new DetectionResult(lines, junctions, opts, hysteresis,
+					System.nanoTime() - start);
+		}
+
+		DetectionResult reconstruct(DetectionResult linked, long start) {
+			Lines lines = reconstruct_lines(linked.getLines(),
+					linked.getJunctions(), config.getOverlapOption());
+			return new DetectionResult(lines, junctions,
+					linked.getUsedOptions(), linked.getHysteresis(),
+					System.nanoTime() - start);
+		}
+
+		private void assignLinesToJunctions(Lines lines, Junctions junctions){
+			for (Junction j : junctions) {
+				j.lineCont1 = lines.get(j.cont1);
+				j.lineCont2 = lines.get(j.cont2);
+			}
+		}
+
+		private void addAdditionalJunctionPointsAndLines(Lines lines, Junctions junctions){
+		
+			/*
+			 * Index the junctions by position, so that the junctions with the same
+			 * position as a split point are found without comparing it with all
+			 * other junctions. The junctions that are added below are always marked
+			 * as processed, so only the existing ones need to be indexed.
+			 */
+			PointGrid junctionPoints = new PointGrid(SAME_POSITION_DISTANCE);
+			for(int i = 0; i < junctions.size(); i++){
+				junctionPoints.add(junctions.get(i).x, junctions.get(i).y, i);
+			}
+
+			/*
+			 * The indices of the junctions of each line, so that only the
+			 * junctions of a line are updated when it is split.
+			 */
+			List<List<Integer>> junctionsOfLine = new ArrayList<List<Integer>>();
+			for(int j = 0; j < lines.size(); j++){
+				junctionsOfLine.add(new ArrayList<Integer>());
+			}
+			for(int i = 0; i < junctions.size(); i++){
+				addJunctionOfLines(junctionsOfLine, junctions, i);
+			}
+		
+			for(int i = 0; i < junctions.size(); i++){
+				Junction splitPoint = junctions.get(i); //Split point!
+		
+				log("Process Splitpoint " + splitPoint.getLine1().getID() +"-"+splitPoint.getLine2().getID() + " Pos: " + splitPoint.pos);
+			//splitPoint.pos!=0&&splitPoint.pos!=(splitPoint.getLine1().num-1)
+				if(!alreadyProcessedJunctionPoints.get(i)){
+			
+				
+					/*
+					 * Find Junctions with the same position as the split point
+					 */
+					Junctions junctionsWithTheSamePosition = new Junctions(junctions.getFrame());
+					alreadyProcessedJunctionPoints.set(i);
+					junctionsWithTheSamePosition.add(splitPoint);
+					int numCandidates = junctionPoints.query(splitPoint.x, splitPoint.y, 2*SAME_POSITION_DISTANCE);
+					int[] candidates = junctionPoints.getResult();
+					for(int c = 0; c < numCandidates; c++){
+						int j = candidates[c];
+						if(j > i && !alreadyProcessedJunctionPoints.get(j)){
+							Junction junc2 = junctions.get(j);
+							if(Math.abs(junc2.x-splitPoint.x) < SAME_POSITION_DISTANCE && Math.abs(junc2.y-splitPoint.y) < SAME_POSITION_DISTANCE){
+								alreadyProcessedJunctionPoints.set(j);
+								junctionsWithTheSamePosition.add(junc2);
+							}
+						}
+					}
+				
+					/*
+					 * Connect all lines which are connected with the processed line also with each other (new junctions point)
+					 */
+				
+					ArrayList<Line> connectedWithProcessedLine = new ArrayList<Line>();
+					ArrayList<Integer> connectedWithProcessedIndex = new ArrayList<Integer>();
+					for (Junction junc : junctionsWithTheSamePosition) {
+						connectedWithProcessedLine.add(junc.getLine2());
+						connectedWithProcessedIndex.add(junc.cont2);
+					}
+					for(int j = 0; j < connectedWithProcessedLine.size(); j++){
+						for(int k = j+1; k < connectedWithProcessedLine.size(); k++){
+							Line l1 = connectedWithProcessedLine.get(j);
+							Line l2 = connectedWithProcessedLine.get(k);
+							Junction junc = new Junction();
+							junc.lineCont1 = l1;
+							junc.lineCont2 = l2;
+							junc.x = splitPoint.x;
+							junc.y = splitPoint.y;
+							junc.cont1 = connectedWithProcessedIndex.get(j);
+							junc.cont2 = connectedWithProcessedIndex.get(k);
+							junc.pos = l1.getStartOrdEndPosition(junc.x, junc.y);
+							junctions.add(junc); 
+							addJunctionOfLines(junctionsOfLine, junctions, junctions.size()-1);
+							log("Connect " + junc.getLine1().getID() +"-"+junc.getLine2().getID() + " Pos: " + junc.pos);
+							//l1.setContourClass(reconstructContourClass(l1, l1.getStartOrdEndPosition(junc.x, junc.y)));
+						//	l2.setContourClass(reconstructContourClass(l2, l2.getStartOrdEndPosition(junc.x, junc.y)));
+							alreadyProcessedJunctionPoints.set(junctions.size()-1);
+						}
+					}
+				
+					/*
+					 * Split the line in two line at the split point if it is not at the end or beginning of the line
+					 */
+					Line l1 = splitPoint.getLine1();
+					int pos = splitPoint.pos;
+					boolean isClosedContour = l1.col[0] == l1.col[l1.num-1] && l1.row[0] == l1.row[l1.num-1];
+				
+					if(isClosedContour){
+						l1.setContourClass(LinesUtil.contour_class.cont_closed);
+						l1.setContourClass(reconstructContourClass(l1, l1.getStartOrdEndPosition(splitPoint.x, splitPoint.y)));
+					}
+					log("Pos: " + pos + " num: " + l1.num);
+					if(pos!=0 && pos != (l1.num-1) && !isClosedContour){
+						//All data up to pos (included)
+						int keepLength = pos+1;
+					
+				
+						float[] keepAsymmetry = new float[keepLength];
+						float[] keepIntensity = new float[keepLength];
+						
+						float[] keepAngle = new float[keepLength];
+						float[] keepWidth_l = new float[keepLength];
+						float[] keepWidth_r = new float[keepLength];
+				
+					
+						float[] keepCol = new float[keepLength];
+						float[] keepRow = new float[keepLength];
+						float[] keepResponse = new float[keepLength];
+					
+					
+					
+						//All data from pos (included)
+						int splitSize = (int) (l1.num-pos);
+					
+						float[] splitAsymmetry = new float[splitSize];
+						float[] splitIntensity = new float[splitSize];
+					
+						float[] splitAngle = new float[splitSize];
+						float[] splitWidth_l = new float[splitSize];
+						float[] splitWidth_r = new float[splitSize];
+					
+						float[] splitCol = new float[splitSize];
+						float[] splitRow = new float[splitSize];
+						float[] splitResponse = new float[splitSize];
+					
+					
+						//Copy data
+						if(doEstimateWidth){
+							if(doCorrectPosition){
+								System.arraycopy(l1.asymmetry, 0, keepAsymmetry, 0, keepLength);
+								System.arraycopy(l1.asymmetry, pos, splitAsymmetry, 0, splitSize);
+						
+								System.arraycopy(l1.intensity, 0, keepIntensity, 0, keepLength);
+								System.arraycopy(l1.intensity, pos, splitIntensity, 0, splitSize);
+							}
+						
+							System.arraycopy(l1.angle, 0, keepAngle, 0, keepLength);
+							System.arraycopy(l1.angle, pos, splitAngle, 0, splitSize);
+						
+							System.arraycopy(l1.width_l, 0, keepWidth_l, 0, keepLength);
+							System.arraycopy(l1.width_l, pos, splitWidth_l, 0, splitSize);
+						
+							System.arraycopy(l1.width_r, 0, keepWidth_r, 0, keepLength);
+							System.arraycopy(l1.width_r, pos, splitWidth_r, 0, splitSize);
+						}
+					
+						System.arraycopy(l1.col, 0, keepCol, 0, keepLength);
+						System.arraycopy(l1.col, pos, splitCol, 0, splitSize);
+					
+						System.arraycopy(l1.row, 0, keepRow, 0, keepLength);
+						System.arraycopy(l1.row, pos, splitRow, 0, splitSize);
+					
+						System.arraycopy(l1.response, 0, keepResponse, 0, keepLength);
+						System.arraycopy(l1.response, pos, splitResponse, 0, splitSize);
+					
+					
+					
+					
+					
+					
+					
+						//Generate new line
+						Line lNew = new Line(lines.nextID());
+						lNew.angle = splitAngle;
+						lNew.asymmetry = splitAsymmetry;
+						lNew.col = splitCol;
+						lNew.row = splitRow;
+						lNew.response = splitResponse;
+						lNew.intensity = splitIntensity;
+						lNew.width_l = splitWidth_l;
+						lNew.width_r = splitWidth_r;
+						lNew.num = splitSize;
+						lNew.setContourClass(l1.getContourClass());
+						lNew.setFrame(l1.getFrame());
+						lNew.seeded = l1.seeded;
+						lines.add(lNew);
+						junctionsOfLine.add(new ArrayList<Integer>());
+						int newIndex = lines.size()-1;
+					
+						//Update junctions
+					
+						//Add additional junction points for the split point
+						Set<Integer> lineIds = new HashSet<Integer>(); //All IDs which are connected at this junction point
+						for (Junction junc : junctionsWithTheSamePosition) {
+							lineIds.add(junc.getLine1().getID());
+							lineIds.add(junc.getLine2().getID());
+						}
+						Iterator<Integer> idIt = lineIds.iterator();
+						while (idIt.hasNext()) {
+							int id = idIt.next();
+							int connectWithLineID =  lines.getIndexByID(id);
+							Line connectWith = lines.get(connectWithLineID);
+							Junction j = new Junction();
+							j.cont1 = lines.size()-1;
+							j.cont2 = connectWithLineID;
+							j.lineCont1 = lNew;
+							j.lineCont2 = connectWith;
+							j.x = splitPoint.x;
+							j.y = splitPoint.y;
+							j.pos = lNew.getStartOrdEndPosition(splitPoint.x, splitPoint.y);
+							//lNew.setContourClass(reconstructContourClass(lNew, j.pos));
+							//connectWith.setContourClass(reconstructContourClass(connectWith, connectWith.getStartOrdEndPosition(splitPoint.x, splitPoint.y)));
+							junctions.add(j);
+							addJunctionOfLines(junctionsOfLine, junctions, junctions.size()-1);
+							log("Connect " + j.getLine1().getID() +"-"+j.getLine2().getID() + " Pos: " + j.pos);
+							alreadyProcessedJunctionPoints.set(junctions.size()-1);
+						}
+
+						//Update following junctions point
+						List<Integer> ofSplitLine = new ArrayList<Integer>();
+						for(int j : junctionsOfLine.get(splitPoint.cont1)){
+							Junction junc2 = junctions.get(j);
+							boolean wasOnNewLine = junc2.cont1 == newIndex || junc2.cont2 == newIndex;
+							if(junc2.cont1 == splitPoint.cont1 && junc2.pos>splitPoint.pos){
+								log("Update From " + junc2.getLine1().getID() +"-"+junc2.getLine2().getID() + " Pos: " + junc2.pos);
+								junc2.cont1 = newIndex;
+								junc2.lineCont1 = lNew;
+								junc2.pos = junc2.pos-splitPoint.pos;
+								log("Update To " + junc2.getLine1().getID() +"-"+junc2.getLine2().getID() + " Pos: " + junc2.pos);
+							}
+						
+							if(junc2.cont2 == splitPoint.cont1){
+								double[] min = minDistance(junc2.getLine2(), junc2.x, junc2.y);
+								if(((int)min[1])>splitPoint.pos){
+									junc2.cont2 = newIndex;
+									junc2.lineCont2 = lNew;
+								}
+							}
+						
+							if(junc2.cont1 == splitPoint.cont1 || junc2.cont2 == splitPoint.cont1){
+								ofSplitLine.add(j);
+							}
+							if(!wasOnNewLine && (junc2.cont1 == newIndex || junc2.cont2 == newIndex)){
+								junctionsOfLine.get(newIndex).add(j);
+							}
+						}
+						junctionsOfLine.set(splitPoint.cont1, ofSplitLine);
+					
+						//Update Line 1
+						//Overwrite line data
+						l1.angle = keepAngle;
+						l1.asymmetry = keepAsymmetry;
+						l1.col = keepCol;
+						l1.row = keepRow;
+						l1.response = keepResponse;
+						l1.intensity = keepIntensity;
+						l1.width_l = keepWidth_l;
+						l1.width_r = keepWidth_r;
+						l1.num = keepLength;
+					
+						//Update position of splitpoint
+						log("Set Splitpoint Position from " + splitPoint.pos);
+						splitPoint.pos = l1.getStartOrdEndPosition(splitPoint.x, splitPoint.y);
+						log("Set Splitpoint Position to " + splitPoint.pos);
+						lines.set(splitPoint.cont1, l1);
+					
+					}
+				
+				
+				}
+			}
+		}
+
+		/* Adds the junction with the index j to the junctions of its lines. */
+		private void addJunctionOfLines(List<List<Integer>> junctionsOfLine, Junctions junctions, int j){
+			Junction junc = junctions.get(j);
+			junctionsOfLine.get(junc.cont1).add(j);
+			if(junc.cont2 != junc.cont1){
+				junctionsOfLine.get(junc.cont2).add(j);
+			}
+		}
+
+		private Junctions fixJunctions(Lines lines, Junctions junctions) {
+			Junctions newJunctions = new Junctions(junctions.getFrame());
+		
+			/*
+			 * Index of the processed junction positions and of all line points. A
+			 * line can only pass within JUNCTION_LINE_DISTANCE of a junction if
+			 * one of its points is found by the query (which uses twice the
+			 * distance to be safe against rounding); all other lines are skipped
+			 * by the distance check anyway.
+			 */
+			PointGrid processedJunctions = new PointGrid(1.0);
+			PointGrid linePoints = new PointGrid(1.0);
+			for(int j = 0; j < lines.size(); j++){
+				Line l = lines.get(j);
+				for(int k = 0; k < l.num; k++){
+					linePoints.add(l.col[k], l.row[k], j);
+				}
+			}
+			for(int i = 0; i < junctions.size(); i++){
+				Junction junc = junctions.get(i);
+				Line mainLine = null;
+				int mainLineIndex = -1;
+				int mainLinePos = -1;
+				ArrayList<Line> secondaryLines = new ArrayList<Line>();
+				ArrayList<Integer> secondaryLineIndex = new ArrayList<Integer>();
+				ArrayList<Integer> secondaryLinePos = new ArrayList<Integer>();
+			
+				//Verarbeite jede Junction-Position nur einmal.
+				if(!isProcessed(processedJunctions, junctions, junc)){ //processed[(int)junc.x][(int)junc.y]==0
+
+					processedJunctions.add(junc.x, junc.y, i);
+				
+					/*
+					 * Finde die Sekundärlinien und Hauptlinien
+					 */
+					int numCandidates = linePoints.query(junc.x, junc.y, 2*JUNCTION_LINE_DISTANCE);
+					int[] candidates = java.util.Arrays.copyOf(linePoints.getResult(), numCandidates);
+					for(int j : candidates) {
+						Line l = lines.get(j);
+				
+						double[] mindist = minDistance(l, junc.x, junc.y);
+						if(mindist[0]<JUNCTION_LINE_DISTANCE){ //Wenn der Punkt auf der Linie liegt, analysiere genauer
+						
+							if(mindist[1]==0 || mindist[1]==(l.num-1)){ //Wenn der Junction-Point am Ende oder am Anfang liegt, ist es sekundäre Linie.
+								secondaryLines.add(l);
+								secondaryLineIndex.add(j);
+								secondaryLinePos.add((int)mindist[1]);
+							} else {			// Wenn er innerhalb der Linie liegt, ist dies die Hauptlinie.
+			
+								if(mainLine!=null){
+									if(mainLine.getID()==l.getID()){
+										continue;
+									}
+									log("Äh, zwei Hauptlininen geht nich..." + mainLine.getID() + " x " + junc.x + " y " + junc.y);
+									log("Äh, zwei Hauptlininen geht nich..." + l.getID() + " x " + junc.x + " y " + junc.y);
+								}
+								mainLine = l;
+								mainLineIndex = j;
+								mainLinePos = (int) mindist[1];
+							
+							
+							}
+						}
+					}
+					if(mainLine!=null){
+						for (int j = 0; j < secondaryLines.size(); j++) {
+							Junction newJunc = new Junction();
+							newJunc.cont1 = mainLineIndex;
+							newJunc.cont2 = secondaryLineIndex.get(j);
+							newJunc.x = junc.x;
+							newJunc.y = junc.y;
+							newJunc.pos = mainLinePos;
+							//lines.get(newJunc.cont1).setContourClass(reconstructContourClass(lines.get(newJunc.cont1), mainLinePos));
+							//lines.get(newJunc.cont2).setContourClass(reconstructContourClass(lines.get(newJunc.cont2), secondaryLinePos.get(j)));
+							newJunctions.add(newJunc);
+							log("NewJunc Mainline: " + lines.get(newJunc.cont1).getID() + "-" + lines.get(newJunc.cont2).getID() + " pos " + newJunc.pos + " num " + lines.get(newJunc.cont1).num);
+						
+						}
+					}else{
+						//In manchen Fällen gibt es keine Hauptlinie... (bug im Algorithmus, ich bin aber nicht fähig ihn zu finden=.
+						HashSet<Integer> uniqueIDs = new HashSet<Integer>();
+						ArrayList<Line> uniqueLines = new ArrayList<Line>();
+						ArrayList<Integer> uniqueLineIndex = new ArrayList<Integer>();
+						ArrayList<Integer> uniqueLinePos = new ArrayList<Integer>();
+						for (int j = 0; j < secondaryLines.size(); j++) {
+							if(!uniqueIDs.contains(secondaryLines.get(j).getID())){
+								uniqueIDs.add(secondaryLines.get(j).getID());
+								uniqueLines.add(secondaryLines.get(j));
+								uniqueLineIndex.add(secondaryLineIndex.get(j));
+								uniqueLinePos.add(secondaryLinePos.get(j));
+							
+							}
+						
+						}
+						for(int j = 0; j < uniqueLines.size(); j++){
+							for(int k = j+1; k < uniqueLines.size(); k++){
+								Junction newJunc = new Junction();
+								newJunc.cont1 = uniqueLineIndex.get(j);
+								newJunc.cont2 = uniqueLineIndex.get(k);
+								newJunc.x = junc.x;
+								newJunc.y = junc.y;
+								newJunc.pos = uniqueLinePos.get(j);
+								newJunctions.add(newJunc);
+								log("NewJunc Second: " + lines.get(newJunc.cont1).getID() + "-" + lines.get(newJunc.cont2).getID() + " pos " + newJunc.pos + " num " + lines.get(newJunc.cont1).num);
+
+								//lines.get(newJunc.cont1).setContourClass(reconstructContourClass(lines.get(newJunc.cont1), uniqueLinePos.get(j)));
+								//lines.get(newJunc.cont2).setContourClass(reconstructContourClass(lines.get(newJunc.cont2), uniqueLinePos.get(k)));
+								alreadyProcessedJunctionPoints.set(newJunctions.size()-1);
+					
+							
+							}
+						}
+					}
+			
+				}
+			}
+			return newJunctions;
+		
+		}
+	
+		private LinesUtil.contour_class reconstructContourClass(Line l, int pos){
+			LinesUtil.contour_class currentClass = l.getLineClass();
+	
+			boolean hasJunctionAtStartpoint = pos==0?true:false;
+			boolean hasJunctionAtEndpoint = pos==(l.num-1)?true:false;
+		
+			if(currentClass == LinesUtil.contour_class.cont_no_junc && hasJunctionAtStartpoint){
+				return LinesUtil.contour_class.cont_start_junc;
+			}
+		
+			if(currentClass == LinesUtil.contour_class.cont_no_junc && hasJunctionAtEndpoint){
+				return LinesUtil.contour_class.cont_end_junc;
+			}
+		
+			if(currentClass == LinesUtil.contour_class.cont_start_junc && hasJunctionAtEndpoint){
+				return LinesUtil.contour_class.cont_both_junc;
+			}
+		
+			if(currentClass == LinesUtil.contour_class.cont_end_junc && hasJunctionAtStartpoint){
+				return LinesUtil.contour_class.cont_both_junc;
+			}
+		
+			if(currentClass == LinesUtil.contour_class.cont_closed && (hasJunctionAtEndpoint || hasJunctionAtStartpoint)){
+				return LinesUtil.contour_class.cont_both_junc;
+			}
+		
+			return currentClass;
+		
+		}
+		/*
+		 * Checks whether a junction at exactly the position of junc has already
+		 * been processed.
+		 */
+		private boolean isProcessed(PointGrid processed, Junctions junctions, Junction junc){
+			int n = processed.query(junc.x, junc.y, 0);
+			int[] candidates = processed.getResult();
+			for(int k = 0; k < n; k++){
+				Junction other = junctions.get(candidates[k]);
+				if(other.x == junc.x && other.y == junc.y){
+					return true;
+				}
+			}
+			return false;
+		}
+	
+		/**
+		 * 
+		 * @param l Line
+		 * @param x x-Position
+		 * @param y y-Position
+		 * @return Double Array [0] minimal distance [1] position of minimal distance
+		 */
+		private double[] minDistance(Line l, float x, float y){
+			double min = Double.MAX_VALUE;
+			double index = -1;
+			for(int i = 0; i < l.num; i++){
+				double d = Math.sqrt(Math.pow(l.col[i]-x, 2)+Math.pow(l.row[i]-y, 2));
+				if(d< min){
+					min =d;
+					index = i;
+				}
+			}
+			double[] ret =  {min,index};
+			return ret;
+		}
+		/*
+		 * Deletes the contours with the given IDs and their junctions. The
+		 * junctions refer to the contours by index, so they are deleted first.
+		 */
+		private void deleteContours(Lines contours, Junctions junctions, Set<Integer> ids) {
+
+			ArrayList<Junction> remove = new ArrayList<Junction>();
+			for (Junction junction : junctions) {
+
+				if (ids.contains(contours.get((int) junction.cont1).getID())
+						|| ids.contains(contours.get((int) junction.cont2).getID())) {
+					remove.add(junction);
+				}
+
+			}
+			for (Junction junction : remove) {
+				junctions.remove(junction);
+			}
+
+			Iterator<Line> it = contours.iterator();
+			while (it.hasNext()) {
+				if (ids.contains(it.next().getID())) {
+					it.remove();
+				}
+			}
+		}
+
+		private void fixContours(Lines contours, Junctions junctions) {
+
+			// Contours with only a single position cant be valid.
+			Set<Integer> single = new HashSet<Integer>();
+			for (Line contour : contours) {
+				if (contour.num == 1) {
+					single.add(contour.getID());
+					continue;
+				}
+				//If the results are corrupted, this informationen has to be reconstructed in fixJunctions
+				contour.setContourClass(LinesUtil.contour_class.cont_no_junc);
+			}
+			if (!single.isEmpty()) {
+				deleteContours(contours,junctions,single);
+			}
+
+			// For some reason the first and the last element are the same. Delete
+			// it!
+		
+			if (contours.size() >= 2) {
+				if(contours.get(0).getID() == contours.get(contours.size()-1).getID()){
+					contours.remove(contours.size() - 1);	
+				}
+			}
+		}
+
+		private Lines get_lines(double sigma, double high, double low,
+				ResponseField response, byte[] seed, int frame, Junctions resultJunction, OverlapOption overlapOption) {
+			Lines contours = new Lines(frame);
+			int num_cont = 0;
+			opts = new Options(-1.0, -1.0, -1.0, isDarkLine ? LinesUtil.MODE_DARK
+					: LinesUtil.MODE_LIGHT, doCorrectPosition, doEstimateWidth,
+					doExtendLine, false, false, false, overlapOption);
+
+			opts.sigma = sigma;
+			opts.high = high;
+			opts.low = low;
+
+			MutableInt hnum_cont = new MutableInt(num_cont);
+			Position p = new Position(cancel);
+			p.detect_lines(response, seed, contours, hnum_cont, opts.low, opts.high,
+					opts.width, opts.correct, opts.extend, resultJunction);
+			num_cont = hnum_cont.getValue();
+			hysteresis = p.getHysteresis();
+
+			/*
+			 * For some reason, the x and y coordinates are permuted
+			 */
+			for (Junction junction : resultJunction) {
+				float help = junction.x;
+				junction.x = junction.y;
+				junction.y = help;
+			}
+			return contours;
+		}
+
+		private Lines reconstruct_lines(Lines contours, Junctions resultJunction, OverlapOption overlapOption) {
+			OverlapResolver resolver = null;
+
+			switch (overlapOption) {
+				default:
+				case NONE:
+					break;
+				case SLOPE: resolver = new SlopeOverlapResolver();
+					break;
+				case GRAPH: resolver = new GraphOverlapResolver();
+					break;
+			}
+
+		//	lines = contours;
+			fixContours(contours,resultJunction);
+			alreadyProcessedJunctionPoints = new BitSet();
+			//Reconstruct solution from junction points. This have to be done, because in raw cases
+			//the algorithm corrupts the results. However, I was not able to find that bug so I decided
+			//to reconstruct the solution from the information which were not be corrupted.
+
+			resultJunction = fixJunctions(contours,resultJunction);
+
+			assignLinesToJunctions(contours,resultJunction);
+		
+			addAdditionalJunctionPointsAndLines(contours,resultJunction);
+			Collections.sort(resultJunction);
+			junctions = resultJunction;
+
+			/*
+			 * RECONSRUCTION OF CONTOUR CLASS
+			 */
+			//Reset contour class
+			for(int i = 0; i < contours.size(); i++){
+				contours.get(i).setContourClass(LinesUtil.contour_class.cont_no_junc);
+			}
+		
+			//Find closed lines
+			for(int i = 0; i < contours.size(); i++){
+				boolean isClosedContour = contours.get(i).col[0] == contours.get(i).col[contours.get(i).num-1] && contours.get(i).row[0] == contours.get(i).row[contours.get(i).num-1];
+				if(isClosedContour){
+					contours.get(i).setContourClass(LinesUtil.contour_class.cont_closed);	
+				}
+			}
+
+		    //Reconstruction contour class
+			for(int i = 0; i < junctions.size(); i++){
+				Junction j = junctions.get(i);
+				j.getLine1().setContourClass(reconstructContourClass(j.getLine1(), j.pos));
+				float x = j.getLine1().getXCoordinates()[j.pos];
+				float y = j.getLine1().getYCoordinates()[j.pos];
+				j.getLine2().setContourClass(reconstructContourClass(j.getLine2(),j.getLine2().getStartOrdEndPosition(x, y)));
+			}
+		
+
+			cancel.checkCancelled();
+			if (resolver != null) contours = resolver.resolve(contours, junctions, bechatty);
+			return contours;
+
+		}
+		private void log(String s){
+			if(bechatty){
+				LinesUtil.LOGGER.info(s);
+			}
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class Lines extends ArrayList<Line> {
+	
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+	private int frame;
+	
+	// The lines of a frame get their IDs from the range
+	// [firstID, firstID + numIDs), so that the IDs only depend on the frame
+	// and not on the order in which parallel frames are processed.
+	private int firstID = 0;
+	private int numIDs = 0;
+	
+	// Index of the first line with a given ID. It is valid as long as
+	// indexModCount equals modCount; set() and add() keep it up to date,
+	// other changes of the list rebuild it on the next lookup.
+	private HashMap<Integer, Integer> indexByID = new HashMap<Integer, Integer>();
+	private int indexModCount = -1;
+	
+	/**
+	 * 
+	 * @param frame Slice number
+	 */
+	public Lines(int frame) {
+		// TODO Auto-generated constructor stub
+		this.frame = frame;
+	}
+	
+	public int getFrame(){
+		return frame;
+	}
+	
+	public int getIndexByID(int id){
+		if(indexModCount != modCount){
+			indexByID.clear();
+			for(int i = size()-1; i >= 0; i--){
+				indexByID.put(get(i).getID(), i);
+			}
+			indexModCount = modCount;
+		}
+		Integer index = indexByID.get(id);
+		return index == null ? -1 : index;
+	}
+	
+	@Override
+	public boolean add(Line l){
+		boolean indexed = indexModCount == modCount;
+		super.add(l);
+		if(indexed){
+			if(!indexByID.containsKey(l.getID())){
+				indexByID.put(l.getID(), size()-1);
+			}
+			indexModCount = modCount;
+		}
+		return true;
+	}
+	
+	@Override
+	public Line set(int index, Line l){
+		Line old = super.set(index, l);
+		if(old.getID() != l.getID()){
+			indexModCount = -1;
+		}
+		return old;
+	}
+	
+	/**
+	 * @return a new ID from the ID range of this frame
+	 */
+	int nextID(){
+		return firstID + numIDs++;
+	}
+	
+	/**
+	 * @return the number of IDs which were taken from the ID range
+	 */
+	int getNumIDs(){
+		return numIDs;
+	}
+	
+	/**
+	 * Continues the ID range of the given lines, e.g., if they are replaced by
+	 * this list.
+	 */
+	void continueIDs(Lines lines){
+		firstID = lines.firstID;
+		numIDs = lines.numIDs;
+	}
+	
+	/**
+	 * Moves the ID range to start at the given ID and renumbers the lines
+	 * accordingly.
+	 */
+	void rebaseIDs(int firstID){
+		int[] ids = new int[size()];
+		for(int i = 0; i < size(); i++){
+			ids[i] = get(i).getID() - this.firstID + firstID;
+		}
+		for(int i = 0; i < size(); i++){
+			get(i).setID(ids[i]);
+		}
+		this.firstID = firstID;
+		indexModCount = -1;
+	}
+
+
+}
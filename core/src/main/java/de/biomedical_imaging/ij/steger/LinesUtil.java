@@ -21,8 +21,13 @@
  */
 package de.biomedical_imaging.ij.steger;
 
+import java.util.logging.Logger;
+
 public class LinesUtil {
 	
+	/* Receives the verbose output of the detection and overlap resolution. */
+	public static final Logger LOGGER = Logger.getLogger(LinesUtil.class.getPackage().getName());
+	
 	public static final int DERIV_R  = 1;  /* Derivative in row direction */
 	public static final int DERIV_C  = 2;  /* Derivative in column direction */
 	public static final int DERIV_RR = 3;  /* Second derivative in row direction */
@@ -0,0 +1,226 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An array of floats or bytes outside of the Java heap that is indexed with
+ * longs, so it may have more than 2^31 elements. The elements are kept in
+ * chunks of 1 GiB, either in direct buffers or in a memory-mapped temporary
+ * file. A mapped array is paged to the file by the operating system if the
+ * memory is short.
+ * <p>
+ * Elements at different indices may be read and written by several threads
+ * at once; the array does not synchronize accesses to the same element.
+ */
+public final class OffHeapArray implements Closeable {
+
+	private static final int CHUNK_SHIFT = 30;
+	private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+	private final long length;
+	private final int elementSize;
+	private ByteBuffer[] bytes;
+	private FloatBuffer[] floats;
+	private final File file;
+
+	private OffHeapArray(long length, int elementSize, File directory)
+			throws IOException {
+		if (length < 0)
+			throw new IllegalArgumentException("Length " + length + " < 0");
+		this.length = length;
+		this.elementSize = elementSize;
+		long size = length * elementSize;
+		int chunks = (int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT);
+		bytes = new ByteBuffer[chunks];
+		floats = new FloatBuffer[chunks];
+		if (directory == null) {
+			file = null;
+			for (int c = 0; c < chunks; c++)
+				bytes[c] = ByteBuffer.allocateDirect(chunkSize(size, c));
+		} else {
+			file = File.createTempFile("ridge", ".field", directory);
+			file.deleteOnExit();
+			boolean mapped = false;
+			try {
+				RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				try {
+					raf.setLength(size);
+					FileChannel channel = raf.getChannel();
+					// The mappings stay valid after the channel is closed
+					for (int c = 0; c < chunks; c++)
+						bytes[c] = channel.map(FileChannel.MapMode.READ_WRITE,
+								(long) c << CHUNK_SHIFT, chunkSize(size, c));
+				} finally {
+					raf.close();
+				}
+				mapped = true;
+			} finally {
+				if (!mapped)
+					file.delete();
+			}
+		}
+		for (int c = 0; c < chunks; c++) {
+			bytes[c].order(ByteOrder.nativeOrder());
+			if (elementSize == 4)
+				floats[c] = bytes[c].asFloatBuffer();
+		}
+	}
+
+	private static int chunkSize(long size, int c) {
+		return (int) Math.min(1L << CHUNK_SHIFT, size - ((long) c << CHUNK_SHIFT));
+	}
+
+	/**
+	 * @param length
+	 *            Number of floats
+	 * @param directory
+	 *            Directory of the temporary file that is mapped, or null to
+	 *            keep the array in memory
+	 * @throws IOException
+	 *             if the file cannot be created or mapped
+	 */
+	public static OffHeapArray allocateFloats(long length, File directory)
+			throws IOException {
+		return new OffHeapArray(length, 4, directory);
+	}
+
+	/**
+	 * As {@link #allocateFloats} for an array of bytes.
+	 */
+	public static OffHeapArray allocateBytes(long length, File directory)
+			throws IOException {
+		return new OffHeapArray(length, 1, directory);
+	}
+
+	/**
+	 * @return the number of elements
+	 */
+	public long length() {
+		return length;
+	}
+
+	public float getFloat(long i) {
+		long offset = i << 2;
+		return floats[(int) (offset >>> CHUNK_SHIFT)]
+				.get((int) ((offset & CHUNK_MASK) >>> 2));
+	}
+
+	public void setFloat(long i, float value) {
+		long offset = i << 2;
+		floats[(int) (offset >>> CHUNK_SHIFT)].put(
+				(int) ((offset & CHUNK_MASK) >>> 2), value);
+	}
+
+	public byte getByte(long i) {
+		return bytes[(int) (i >>> CHUNK_SHIFT)].get((int) (i & CHUNK_MASK));
+	}
+
+	public void setByte(long i, byte value) {
+		bytes[(int) (i >>> CHUNK_SHIFT)].put((int) (i & CHUNK_MASK), value);
+	}
+
+	/**
+	 * Copies len floats from the index i on into dst, starting at off.
+	 */
+	public void getFloats(long i, float[] dst, int off, int len) {
+		while (len > 0) {
+			long offset = i << 2;
+			FloatBuffer chunk = floats[(int) (offset >>> CHUNK_SHIFT)]
+					.duplicate();
+			chunk.position((int) ((offset & CHUNK_MASK) >>> 2));
+			int n = Math.min(len, chunk.remaining());
+			chunk.get(dst, off, n);
+			i += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Copies len floats of src, starting at off, to the index i on.
+	 */
+	public void setFloats(long i, float[] src, int off, int len) {
+		while (len > 0) {
+			long offset = i << 2;
+			FloatBuffer chunk = floats[(int) (offset >>> CHUNK_SHIFT)]
+					.duplicate();
+			chunk.position((int) ((offset & CHUNK_MASK) >>> 2));
+			int n = Math.min(len, chunk.remaining());
+			chunk.put(src, off, n);
+			i += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Copies len bytes from the index i on into dst, starting at off.
+	 */
+	public void getBytes(long i, byte[] dst, int off, int len) {
+		while (len > 0) {
+			ByteBuffer chunk = bytes[(int) (i >>> CHUNK_SHIFT)].duplicate();
+			chunk.position((int) (i & CHUNK_MASK));
+			int n = Math.min(len, chunk.remaining());
+			chunk.get(dst, off, n);
+			i += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Copies len bytes of src, starting at off, to the index i on.
+	 */
+	public void setBytes(long i, byte[] src, int off, int len) {
+		while (len > 0) {
+			ByteBuffer chunk = bytes[(int) (i >>> CHUNK_SHIFT)].duplicate();
+			chunk.position((int) (i & CHUNK_MASK));
+			int n = Math.min(len, chunk.remaining());
+			chunk.put(src, off, n);
+			i += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Releases the buffers and deletes the temporary file. The memory of the
+	 * buffers is freed once they are garbage collected; the file may only be
+	 * deleted on exit on systems that do not delete mapped files.
+	 */
+	@Override
+	public void close() {
+		bytes = null;
+		floats = null;
+		if (file != null)
+			file.delete();
+	}
+}
@@ -28,5 +28,5 @@ package de.biomedical_imaging.ij.steger;
  * @author Mark Hiner <hinerm@gmail.com>
  */
 public enum OverlapOption {
-	NONE, SLOPE;
+	NONE, SLOPE, GRAPH;
 }
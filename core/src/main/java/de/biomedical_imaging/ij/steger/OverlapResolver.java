@@ -24,6 +24,11 @@ package de.biomedical_imaging.ij.steger;
 
 /**
  * Algorithm for resolving overlap between lines.
+ * <p>
+ * Implementations that only merge lines which share junctions or touch each
+ * other should extend {@link AbstractOverlapResolver}, which resolves the
+ * independent groups of lines in parallel.
+ * </p>
  *
  * @author Mark Hiner <hinerm@gmail.com>
  */
@@ -0,0 +1,163 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/** This class splits an index range (e.g., the rows of an image or the list
+   of contours) into bands and processes the bands on a fork/join pool.  The
+   band tasks must only write to their own part of the output, so that the
+   result does not depend on the number of bands.  If the caller already runs
+   inside a fork/join pool the bands are forked into that pool.  A thread
+   that works on one of several frames at once may limit the number of bands
+   of its stages to its share of the threads (see setBandLimit). */
+public class Parallel {
+
+	/** Work on the index range [from,to) of one band. */
+	public interface BandTask {
+		void run(int band, int from, int to);
+	}
+
+	/* Minimum number of pixels per band if the rows of an image are split
+	   into bands. */
+	private static final int MIN_BAND_PIXELS = 1 << 16;
+
+	private static ForkJoinPool pool = null;
+
+	/* Maximum number of bands of the stages run by the current thread, or
+	   null if the bands may use all threads. */
+	private static final ThreadLocal<Integer> bandLimit = new ThreadLocal<Integer>();
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(getParallelism());
+		}
+		return pool;
+	}
+
+	/**
+	 * @return the number of threads that are used to process the bands
+	 */
+	public static int getParallelism() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Limits the number of bands into which the calling thread splits its
+	 * stages. This does not change the result, only how many threads work on
+	 * it.
+	 * 
+	 * @param limit
+	 *            Maximum number of bands, or 0 to remove the limit
+	 * @return the previous limit, or 0 if there was none
+	 */
+	public static int setBandLimit(int limit) {
+		Integer previous = bandLimit.get();
+		if (limit > 0)
+			bandLimit.set(limit);
+		else
+			bandLimit.remove();
+		return previous == null ? 0 : previous;
+	}
+
+	/**
+	 * @return the maximum number of bands of the calling thread: its band
+	 *         limit, otherwise the parallelism of the fork/join pool it runs
+	 *         in, otherwise the number of processors
+	 */
+	public static int getBandLimit() {
+		Integer limit = bandLimit.get();
+		if (limit != null)
+			return limit;
+		if (ForkJoinTask.inForkJoinPool())
+			return ForkJoinTask.getPool().getParallelism();
+		return getParallelism();
+	}
+
+	/**
+	 * @param n
+	 *            Number of items
+	 * @param minSize
+	 *            Minimum number of items per band
+	 * @return the number of bands n items should be split into
+	 */
+	public static int numBands(int n, int minSize) {
+		int bands = n / Math.max(1, minSize);
+		int limit = getBandLimit();
+		if (bands > limit)
+			bands = limit;
+		return Math.max(1, bands);
+	}
+
+	/**
+	 * @param width
+	 *            Width of the image
+	 * @param height
+	 *            Height of the image
+	 * @return the number of bands the rows of the image should be split into
+	 */
+	public static int numRowBands(int width, int height) {
+		return numBands(height, Math.max(1, MIN_BAND_PIXELS / Math.max(1, width)));
+	}
+
+	/**
+	 * Splits the range [0,n) into the given number of bands of (almost) equal
+	 * size and runs the task on each band. Returns when all bands are done.
+	 */
+	public static void forEachBand(int n, int bands, final BandTask task) {
+		if (bands > n)
+			bands = n;
+		if (bands <= 1) {
+			task.run(0, 0, n);
+			return;
+		}
+		final RecursiveAction[] tasks = new RecursiveAction[bands];
+		for (int i = 0; i < bands; i++) {
+			final int band = i;
+			final int from = (int) ((long) n * i / bands);
+			final int to = (int) ((long) n * (i + 1) / bands);
+			tasks[i] = new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					task.run(band, from, to);
+				}
+			};
+		}
+		if (ForkJoinTask.inForkJoinPool()) {
+			ForkJoinTask.invokeAll(tasks);
+		} else {
+			getPool().invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					invokeAll(tasks);
+				}
+			});
+		}
+	}
+
+}
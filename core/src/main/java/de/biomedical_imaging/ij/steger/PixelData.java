@@ -0,0 +1,146 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+/* The grey values of an image in the pixel type in which they were
+   acquired.  Exactly one of the arrays is set.  The image is never converted
+   as a whole: the first pass of the convolution reads the grey values from
+   the typed array and converts them to floating point on the fly, so 8-bit
+   and 16-bit images do not need a float copy of the frame.  8-bit and 16-bit
+   grey values are unsigned.  A PixelData may also be a rectangular part of a
+   larger image (see crop); the pixel (r,c) is then stored at the index
+   offset+r*stride+c of the array. */
+public class PixelData {
+
+	final byte[] bytes;
+	final short[] shorts;
+	final float[] floats;
+	final int width, height;
+	final int offset, stride;
+
+	private PixelData(byte[] bytes, short[] shorts, float[] floats, int length,
+			int width, int height) {
+		if (width <= 0 || height <= 0 || length < (long) width * height)
+			throw new IllegalArgumentException("Image of size " + width + "x"
+					+ height + " does not fit into " + length + " pixels");
+		this.bytes = bytes;
+		this.shorts = shorts;
+		this.floats = floats;
+		this.width = width;
+		this.height = height;
+		this.offset = 0;
+		this.stride = width;
+	}
+
+	private PixelData(PixelData image, int x, int y, int width, int height) {
+		this.bytes = image.bytes;
+		this.shorts = image.shorts;
+		this.floats = image.floats;
+		this.width = width;
+		this.height = height;
+		this.offset = image.offset + y * image.stride + x;
+		this.stride = image.stride;
+	}
+
+	/**
+	 * @return the grey values of an unsigned 8-bit image
+	 */
+	public static PixelData of(byte[] pixels, int width, int height) {
+		return new PixelData(pixels, null, null, pixels.length, width, height);
+	}
+
+	/**
+	 * @return the grey values of an unsigned 16-bit image
+	 */
+	public static PixelData of(short[] pixels, int width, int height) {
+		return new PixelData(null, pixels, null, pixels.length, width, height);
+	}
+
+	/**
+	 * @return the grey values of a 32-bit floating point image
+	 */
+	public static PixelData of(float[] pixels, int width, int height) {
+		return new PixelData(null, null, pixels, pixels.length, width, height);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the grey value of the pixel in row r and column c
+	 */
+	public float get(int r, int c) {
+		int l = offset + r * stride + c;
+		if (bytes != null)
+			return bytes[l] & 0xff;
+		if (shorts != null)
+			return shorts[l] & 0xffff;
+		return floats[l];
+	}
+
+	/**
+	 * @return the image downsampled by the given factor. Each pixel of the
+	 *         result is the mean of a block of factor x factor pixels; the
+	 *         blocks at the right and bottom border may be smaller.
+	 */
+	public PixelData downsample(int factor) {
+		if (factor < 1)
+			throw new IllegalArgumentException("Downsampling factor " + factor
+					+ " < 1");
+		if (factor == 1)
+			return this;
+		int w = (width + factor - 1) / factor;
+		int h = (height + factor - 1) / factor;
+		float[] out = new float[w * h];
+		for (int r = 0; r < h; r++) {
+			int r_end = Math.min(height, (r + 1) * factor);
+			for (int c = 0; c < w; c++) {
+				int c_end = Math.min(width, (c + 1) * factor);
+				double sum = 0;
+				for (int rr = r * factor; rr < r_end; rr++)
+					for (int cc = c * factor; cc < c_end; cc++)
+						sum += get(rr, cc);
+				out[r * w + c] = (float) (sum / ((r_end - r * factor) * (c_end - c * factor)));
+			}
+		}
+		return of(out, w, h);
+	}
+
+	/**
+	 * @return the rectangle of the image with the upper left corner (x,y) and
+	 *         the given size. The pixels are not copied.
+	 * @throws IllegalArgumentException
+	 *             if the rectangle is empty or not within the image
+	 */
+	public PixelData crop(int x, int y, int width, int height) {
+		if (width <= 0 || height <= 0 || x < 0 || y < 0
+				|| x + width > this.width || y + height > this.height)
+			throw new IllegalArgumentException("Rectangle " + x + "," + y
+					+ " " + width + "x" + height + " is not within the image");
+		return new PixelData(this, x, y, width, height);
+	}
+}
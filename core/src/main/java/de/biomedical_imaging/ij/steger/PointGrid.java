@@ -0,0 +1,217 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+/* A spatial index of points that carry an integer value, e.g., the index of
+   the line a point belongs to.  The plane is divided into square cells of a
+   fixed size and the points are hashed by their cell.  A query returns the
+   values of all points in the cells that intersect a square around the
+   query point; these are candidates that the caller has to check with its
+   own distance criterion.  Everything is stored in primitive arrays, so
+   millions of points can be indexed without creating objects. */
+public class PointGrid {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private double cell_size;
+
+	/* Open addressing hash table from the cell to the first point in it. */
+	private long[] keys;
+	private int[] head;
+	private int num_cells;
+
+	/* Points, chained per cell. */
+	private int[] next;
+	private int[] value;
+	private int num;
+
+	/* Buffer for the results of the queries. */
+	private int[] result;
+
+	/**
+	 * @param cell_size
+	 *            Size of the cells. Queries are fastest if it is about the
+	 *            query radius.
+	 */
+	public PointGrid(double cell_size) {
+		this.cell_size = cell_size;
+		keys = new long[ INITIAL_CAPACITY];
+		head = new int[ INITIAL_CAPACITY];
+		java.util.Arrays.fill(head, -1);
+		next = new int[ INITIAL_CAPACITY];
+		value = new int[ INITIAL_CAPACITY];
+		result = new int[ INITIAL_CAPACITY];
+	}
+
+	/**
+	 * @return the number of points in the index
+	 */
+	public int size() {
+		return num;
+	}
+
+	/**
+	 * Adds the point (x,y) with the given value.
+	 */
+	public void add(double x, double y, int v) {
+		int slot;
+
+		if (num == next.length) {
+			next = java.util.Arrays.copyOf(next, num * LinesUtil.REALLOC_FACTOR);
+			value = java.util.Arrays.copyOf(value, num * LinesUtil.REALLOC_FACTOR);
+		}
+		if (2 * (num_cells + 1) > keys.length)
+			rehash(keys.length * 2);
+		slot = slot(key(cell(x), cell(y)));
+		if (head[ slot] < 0)
+			num_cells++;
+		value[ num] = v;
+		next[ num] = head[ slot];
+		head[ slot] = num;
+		num++;
+	}
+
+	/**
+	 * Returns the values of all points in the cells that intersect the square
+	 * [x-radius,x+radius]x[y-radius,y+radius], in ascending order and without
+	 * duplicates. The points whose value is returned therefore include all
+	 * points within the given distance, but may include points farther away.
+	 * The returned array is only valid until the next query.
+	 * 
+	 * @return the number of values, which are returned in the first entries of
+	 *         getResult()
+	 */
+	public int query(double x, double y, double radius) {
+		long cx, cy, cx_lo, cx_hi, cy_lo, cy_hi;
+		int i, n, slot;
+
+		cx_lo = cell(x - radius);
+		cx_hi = cell(x + radius);
+		cy_lo = cell(y - radius);
+		cy_hi = cell(y + radius);
+		n = 0;
+		if ((double) (cx_hi - cx_lo + 1) * (cy_hi - cy_lo + 1) > num_cells) {
+			/* Cheaper to look at all cells. */
+			for (slot = 0; slot < keys.length; slot++) {
+				if (head[ slot] < 0)
+					continue;
+				cx = (int) (keys[ slot] >> 32);
+				cy = (int) keys[ slot];
+				if (cx >= cx_lo && cx <= cx_hi && cy >= cy_lo && cy <= cy_hi)
+					n = collect(head[ slot], n);
+			}
+		} else {
+			for (cx = cx_lo; cx <= cx_hi; cx++) {
+				for (cy = cy_lo; cy <= cy_hi; cy++) {
+					slot = find((int) cx, (int) cy);
+					if (slot >= 0)
+						n = collect(head[ slot], n);
+				}
+			}
+		}
+		if (n > 1) {
+			java.util.Arrays.sort(result, 0, n);
+			i = 0;
+			for (int j = 1; j < n; j++)
+				if (result[ j] != result[ i])
+					result[ ++i] = result[ j];
+			n = i + 1;
+		}
+		return n;
+	}
+
+	/**
+	 * @return the values found by the last query
+	 */
+	public int[] getResult() {
+		return result;
+	}
+
+	private int collect(int p, int n) {
+		for (; p >= 0; p = next[ p]) {
+			if (n == result.length)
+				result = java.util.Arrays.copyOf(result, n * LinesUtil.REALLOC_FACTOR);
+			result[ n++] = value[ p];
+		}
+		return n;
+	}
+
+	private int cell(double c) {
+		return (int) Math.floor(c / cell_size);
+	}
+
+	private static long key(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xffffffffL);
+	}
+
+	private int hash(long k) {
+		k *= 0x9E3779B97F4A7C15L;
+		return (int) (k >>> 40) & (keys.length - 1);
+	}
+
+	/* Slot of the cell with key k; a free slot if the cell is not used yet. */
+	private int slot(long k) {
+		int s;
+
+		s = hash(k);
+		while (head[ s] >= 0 && keys[ s] != k)
+			s = (s + 1) & (keys.length - 1);
+		keys[ s] = k;
+		return s;
+	}
+
+	/* Slot of the cell (cx,cy), or -1 if it contains no points. */
+	private int find(int cx, int cy) {
+		int s;
+		long k;
+
+		k = key(cx, cy);
+		s = hash(k);
+		while (head[ s] >= 0) {
+			if (keys[ s] == k)
+				return s;
+			s = (s + 1) & (keys.length - 1);
+		}
+		return -1;
+	}
+
+	private void rehash(int capacity) {
+		long[] old_keys;
+		int[] old_head;
+		int i, s;
+
+		old_keys = keys;
+		old_head = head;
+		keys = new long[ capacity];
+		head = new int[ capacity];
+		java.util.Arrays.fill(head, -1);
+		for (i = 0; i < old_keys.length; i++) {
+			if (old_head[ i] < 0)
+				continue;
+			s = hash(old_keys[ i]);
+			while (head[ s] >= 0)
+				s = (s + 1) & (capacity - 1);
+			keys[ s] = old_keys[ i];
+			head[ s] = old_head[ i];
+		}
+	}
+}
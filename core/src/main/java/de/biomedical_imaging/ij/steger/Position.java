@@ -33,6 +33,30 @@ public class Position {
 	   maximum lies within pixel b and vice versa.  This presents no problem since
 	   linking algoritm will take care of this. */
 	private static final double PIXEL_BOUNDARY = 0.6;
+
+	/* Regions of the line points of the last call of detect_lines. */
+	private Hysteresis hysteresis;
+
+	/* Checked regularly to abort the computation. */
+	private final CancellationToken cancel;
+
+	public Position()
+	{
+	  this(CancellationToken.NONE);
+	}
+
+	public Position(CancellationToken cancel)
+	{
+	  this.cancel = cancel;
+	}
+
+	/**
+	 * @return the regions of the line points that were found by the last
+	 *         call of detect_lines
+	 */
+	public Hysteresis getHysteresis() {
+		return hysteresis;
+	}
 	
 	/** Solve the linear equation a*x+b=0 and return the result in t and the number
 	   of solutions in num. **/
@@ -143,13 +167,14 @@ public class Position {
 	
 	/* For each point in the image determine whether there is a local maximum of
 	   the second directional derivative in the direction (nx[l],ny[l]) within the
-	   pixels's boundaries.  If so, set ismax[l] to 2 if the eigenvalue ev[l] is
-	   larger than high, to 1 if ev[l] is larger than low, and to 0 otherwise.
-	   Furthermore, put the sub-pixel position of the maximum into (px[l],py[l]).
-	   The parameter mode determines whether maxima (dark lines points) or minima
-	   (bright line points) should be selected.  The partial derivatives of the
-	   image are input as ku[]. */
-	private void compute_line_points(float[][] ku, byte[] ismax, float[] ev,float[] nx, float[] ny,float[] px, float[] py, int width, int height, double low,double high, int mode)
+	   pixels's boundaries.  If so, set candidate[l] to 1 and put the sub-pixel
+	   position of the maximum into (px[l],py[l]).  The parameter mode determines
+	   whether maxima (dark lines points) or minima (bright line points) should
+	   be selected.  The partial derivatives of the image are input as ku[].
+	   The line points are selected by their eigenvalue ev[l] in
+	   classify_line_points.  If mask is not null, only the points with
+	   mask[l] != 0 are examined; the others are never line points. */
+	private void compute_line_points(float[][] ku, byte[] mask, byte[] candidate, float[] ev,float[] nx, float[] ny,float[] px, float[] py, int width, int height, int mode)
 	{
 	  int    r, c, l;
 	  double[]  k = new double[5];
@@ -163,8 +188,11 @@ public class Position {
 	  double  val;
 
 	  for (r=0; r<height; r++) {
+	    cancel.checkCancelled();
 	    for (c=0; c<width; c++) {
 	      l = LinesUtil.LINCOOR(r,c,width);
+	      if (mask != null && mask[l] == 0)
+	        continue;
 	      
 	      k[0] = ku[0][l];
 	      k[1] = ku[1][l];
@@ -190,12 +218,7 @@ public class Position {
 	          p1 = t.doubleValue()*n1;
 	          p2 = t.doubleValue()*n2;
 	          if (Math.abs(p1) <= PIXEL_BOUNDARY && Math.abs(p2) <= PIXEL_BOUNDARY) {
-	            if (val >= low) {
-	              if (val >= high)
-	                ismax[l] = 2;
-	              else
-	                ismax[l] = 1;
-	            }
+	            candidate[l] = 1;
 	            nx[l] = (float) n1;
 	            ny[l] = (float) n2;
 	            px[l] = (float) (r+p1);
@@ -207,6 +230,54 @@ public class Position {
 	  }
 	}
 	
+	/* Set ismax[l] to 2 if the line point candidate l has an eigenvalue ev[l]
+	   larger than high, to 1 if ev[l] is larger than low, and to 0 otherwise.
+	   The rows are classified in parallel bands. */
+	private void classify_line_points(final byte[] candidate, final float[] ev, final byte[] ismax, final int width, int height, final double low, final double high)
+	{
+	  Parallel.forEachBand(height, Parallel.numRowBands(width,height), new Parallel.BandTask() {
+	    @Override
+	    public void run(int band, int from, int to) {
+	      for (int l=from*width; l<to*width; l++) {
+	        if (candidate[l] != 0 && ev[l] >= low) {
+	          if (ev[l] >= high)
+	            ismax[l] = 2;
+	          else
+	            ismax[l] = 1;
+	        } else {
+	          ismax[l] = 0;
+	        }
+	      }
+	    }
+	  });
+	}
+
+	/* Compute the response of the line detector for an image, i.e., all
+	   intermediate images of detect_lines that do not depend on the hysteresis
+	   thresholds. */
+	public ResponseField compute_response(PixelData image, int width, int height, double sigma, int mode)
+	{
+	  return compute_response(image,null,width,height,sigma,mode);
+	}
+
+	/* As above, but only the points with mask[l] != 0 can become line points.
+	   The image is still convolved as a whole, so the pixels outside of the
+	   mask contribute to the derivatives of the pixels close to it. */
+	public ResponseField compute_response(PixelData image, byte[] mask, int width, int height, double sigma, int mode)
+	{
+	  ResponseField f = new ResponseField(width,height,sigma,mode);
+
+	  Convol convol = new Convol(cancel);
+	  convol.convolve_gauss(image,f.k[0],width,height,sigma,LinesUtil.DERIV_R);
+	  convol.convolve_gauss(image,f.k[1],width,height,sigma,LinesUtil.DERIV_C);
+	  convol.convolve_gauss(image,f.k[2],width,height,sigma,LinesUtil.DERIV_RR);
+	  convol.convolve_gauss(image,f.k[3],width,height,sigma,LinesUtil.DERIV_RC);
+	  convol.convolve_gauss(image,f.k[4],width,height,sigma,LinesUtil.DERIV_CC);
+
+	  compute_line_points(f.k,mask,f.candidate,f.ev,f.nx,f.ny,f.px,f.py,width,height,mode);
+	  return f;
+	}
+
 	/* Main routine to detect lines in an image of dimension width * height.  The
 	   extracted lines are returned in result, while num_result is the number of
 	   detected lines.  The parameter sigma is the amount of smoothing that the
@@ -216,48 +287,55 @@ public class Position {
 	   should be extracted, while correct_pos determines whether the line width
 	   and position correction should be applied. */
 	public void detect_lines(float[] image,int width, int height, Lines contours, MutableInt num_result, double sigma, double low, double high, int mode, boolean compute_width, boolean correct_pos,boolean extend_lines, Junctions junctions)
+	{
+	  detect_lines(PixelData.of(image,width,height),width,height,contours,num_result,sigma,low,high,mode,compute_width,correct_pos,extend_lines,junctions);
+	}
+
+	/* As above for an image given in its acquired pixel type, which is
+	   converted to floating point within the first convolution pass. */
+	public void detect_lines(PixelData image,int width, int height, Lines contours, MutableInt num_result, double sigma, double low, double high, int mode, boolean compute_width, boolean correct_pos,boolean extend_lines, Junctions junctions)
+	{
+	  detect_lines(compute_response(image,width,height,sigma,mode),contours,num_result,low,high,compute_width,correct_pos,extend_lines,junctions);
+	}
+
+	/* As above for the response of the line detector computed by
+	   compute_response.  Only the thresholding, the linking and the width
+	   extraction are done, the response itself is not modified. */
+	public void detect_lines(ResponseField f, Lines contours, MutableInt num_result, double low, double high, boolean compute_width, boolean correct_pos,boolean extend_lines, Junctions junctions)
+	{
+	  detect_lines(f,null,contours,num_result,low,high,compute_width,correct_pos,extend_lines,junctions);
+	}
+
+	/* As above, but the line points with seed[l] != 0 count as points above
+	   the high threshold, so that their regions are kept and linked even if
+	   they contain no such point.  This is used for the regions of a part of
+	   an image that may reach a point above the high threshold outside of
+	   the part. */
+	void detect_lines(ResponseField f, byte[] seed, Lines contours, MutableInt num_result, double low, double high, boolean compute_width, boolean correct_pos,boolean extend_lines, Junctions junctions)
 	{
 	  byte[] ismax;
-	  float[] ev, n1, n2, p1, p2;
-	  float[][] k = new float[5][ (width*height)];
-	  
-	//  for (i=0;i<5;i++)
-	//    k[i] = xcalloc(width*height,sizeof(float));
-	  Convol convol = new Convol();
-	  convol.convolve_gauss(image,k[0],width,height,sigma,LinesUtil.DERIV_R);
-	  convol.convolve_gauss(image,k[1],width,height,sigma,LinesUtil.DERIV_C);
-	  convol.convolve_gauss(image,k[2],width,height,sigma,LinesUtil.DERIV_RR);
-	  convol.convolve_gauss(image,k[3],width,height,sigma,LinesUtil.DERIV_RC);
-	  
-	  convol.convolve_gauss(image,k[4],width,height,sigma,LinesUtil.DERIV_CC);
-	
+	  int width = f.width, height = f.height;
+
 	  ismax = new byte[ (width*height)];
-	  ev = new float[ (width*height)];
-	  n1 = new float[ (width*height)];
-	  n2 = new float[ (width*height)];
-	  p1 = new float[ (width*height)];
-	  p2 = new float[ (width*height)];
-	  /*
-	   * The C library function void *memset(void *str, int c, size_t n) 
-	   * copies the character c (an unsigned char) to the first n characters 
-	   * of the string pointed to by the argument str.
-	   */
-	 // memset(ismax,0,width*height*sizeof(*ismax));
-	  // memset(ev,0,width*height*sizeof(*ev));
-	  for(int j = 0; j < ismax.length; j++){
-		  ev[j] = 0;
-		  ismax[j] = 0;
-	  }
+	  classify_line_points(f.candidate,f.ev,ismax,width,height,low,high);
+	  if (seed != null)
+	    for (int l=0; l<ismax.length; l++)
+	      if (seed[l] != 0 && ismax[l] != 0)
+	        ismax[l] = 2;
 
-	  compute_line_points(k,ismax,ev,n1,n2,p1,p2,width,height,low,high,mode);
+	  /* Remove the line points that are not connected to a point above the
+	     high threshold and split the rest into independent regions. */
+	  hysteresis = new Hysteresis();
+	  Hysteresis.hysteresis(ismax,width,height,hysteresis);
 	  
-	  Link l = new Link();
-	  l.compute_contours(ismax,ev,n1,n2,p1,p2,k[0],k[1],contours,num_result,sigma,
-	                   extend_lines,mode,low,high,width,height,junctions);
+	  cancel.checkCancelled();
+	  Link l = new Link(cancel);
+	  l.compute_contours(ismax,f.ev,f.nx,f.ny,f.px,f.py,f.k[0],f.k[1],contours,num_result,f.sigma,
+	                   extend_lines,f.mode,low,high,width,height,junctions,hysteresis);
 
-	  Width w = new Width();
+	  Width w = new Width(cancel);
 	  if (compute_width)
-	    w.compute_line_width(k[0],k[1],width,height,sigma,mode,correct_pos,contours,
+	    w.compute_line_width(f.k[0],f.k[1],width,height,f.sigma,f.mode,correct_pos,contours,
 	                       num_result);
 
 	}
@@ -21,7 +21,11 @@
  */
 package de.biomedical_imaging.ij.steger;
 
+/* A region is stored as a run-length encoding of its rows.  Chord i lies in
+   row row[i] and covers the columns cb[i] to ce[i] (inclusive). */
 public class Region {
-	int  num;      /* number of chords */     
-	Chord[] rl;      /* array of chords */
+	int  num;      /* number of chords */
+	int[] row;     /* row coordinates of the chords */
+	int[] cb;      /* column coordinates of the start of the chords */
+	int[] ce;      /* column coordinates of the end of the chords */
 }
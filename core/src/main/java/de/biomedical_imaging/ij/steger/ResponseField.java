@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+/* The response of the line detector for an image, a smoothing level sigma and
+   a line mode (bright or dark lines): the partial derivatives of the image,
+   the second directional derivative across the line (ev), the normal
+   (nx,ny) and the sub-pixel position (px,py) of the line points.  A pixel is
+   a candidate line point if the maximum of the second directional
+   derivative lies within the pixel.  None of this depends on the hysteresis
+   thresholds, so a field can be kept and classified again with other
+   thresholds; the detection only reads it. */
+public class ResponseField {
+
+	final int width, height;
+	final double sigma;
+	final int mode;
+	/* The derivatives in the order r, c, rr, rc, cc */
+	final float[][] k;
+	final float[] ev, nx, ny, px, py;
+	final byte[] candidate;
+
+	ResponseField(int width, int height, double sigma, int mode) {
+		this.width = width;
+		this.height = height;
+		this.sigma = sigma;
+		this.mode = mode;
+		k = new float[5][ (width*height)];
+		ev = new float[ (width*height)];
+		nx = new float[ (width*height)];
+		ny = new float[ (width*height)];
+		px = new float[ (width*height)];
+		py = new float[ (width*height)];
+		candidate = new byte[ (width*height)];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public double getSigma() {
+		return sigma;
+	}
+
+	/**
+	 * @return {@link LinesUtil#MODE_LIGHT} or {@link LinesUtil#MODE_DARK}
+	 */
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return true if the field was computed with the sigma and line mode of
+	 *         the configuration
+	 */
+	public boolean matches(DetectionConfig config) {
+		return sigma == config.getSigma()
+				&& mode == (config.isDarkLine() ? LinesUtil.MODE_DARK
+						: LinesUtil.MODE_LIGHT);
+	}
+}
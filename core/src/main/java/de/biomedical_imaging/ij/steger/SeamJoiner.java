@@ -0,0 +1,378 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * Joins the lines of parts of an image that are detected on their own, i.e.,
+ * the tiles of a TiledDetectionEngine or the blocks of rows of a
+ * StreamingLineDetector. A part keeps only the points of its lines whose
+ * pixel it owns. Each run of owned points of a line is a piece, and the ends
+ * of the pieces that were cut at the border of a part are joined with the
+ * cut ends of the neighbouring parts into chains, which become the lines of
+ * the whole image.
+ */
+final class SeamJoiner {
+
+	/* Maximum distance of the last points of the two pieces of a line that
+	   was cut at the border between two parts. */
+	static final double MAX_SEAM_GAP = 2.0;
+
+	private SeamJoiner() {
+	}
+
+	/* Assigns each point of the image to the part that owns it. */
+	interface Owner {
+		int partOf(float x, float y);
+	}
+
+	/* A run of consecutive points of a line that a part owns. */
+	static final class Piece {
+		final Line line;
+		/* Indices of the points in line, in the order of the piece */
+		final int[] index;
+		/* True if the piece runs backwards in its chain */
+		private boolean reversed = false;
+		/* The chain it belongs to, or a chain that was merged into it */
+		private Chain chain;
+
+		Piece(Line line, int[] index) {
+			this.line = line;
+			this.index = index;
+			chain = new Chain(this);
+		}
+
+		Chain getChain() {
+			while (chain.mergedInto != null)
+				chain = chain.mergedInto;
+			return chain;
+		}
+
+		boolean isReversed() {
+			return reversed;
+		}
+	}
+
+	/* Pieces that are joined into one line. */
+	static final class Chain {
+		final ArrayDeque<Piece> pieces = new ArrayDeque<Piece>();
+		private Chain mergedInto = null;
+		boolean closed = false;
+		/* The line of the chain once it is built, and true if it is dropped */
+		Line line = null;
+		boolean dropped = false;
+
+		private Chain(Piece p) {
+			pieces.add(p);
+		}
+
+		/* Turns the chain around. */
+		private void reverse() {
+			ArrayDeque<Piece> reversed = new ArrayDeque<Piece>();
+			for (Piece p : pieces) {
+				p.reversed = !p.reversed;
+				reversed.addFirst(p);
+			}
+			pieces.clear();
+			pieces.addAll(reversed);
+		}
+
+		/* True if the given end of the piece is the start of the chain. */
+		private boolean isStart(Piece p, boolean pieceStart) {
+			return pieces.getFirst() == p && pieceStart != p.reversed;
+		}
+
+		/*
+		 * True if one of the pieces belongs to a line that was not started at
+		 * a seeded point below the high threshold (see Line.seeded). Only such
+		 * a chain is linked in the whole image, where a line only starts at a
+		 * point above it.
+		 */
+		boolean isStrong() {
+			for (Piece p : pieces)
+				if (!p.line.seeded)
+					return true;
+			return false;
+		}
+
+		/*
+		 * Copies the points of the chain into l. A closed chain repeats its
+		 * first point at the end and gets the class cont_closed; the class of
+		 * any other chain is left to the caller.
+		 */
+		void copyTo(Line l) {
+			int num = 0;
+			for (Piece p : pieces)
+				num += p.index.length;
+			allocatePoints(l, pieces.getFirst().line, closed ? num + 1 : num);
+			int offset = 0;
+			for (Piece p : pieces) {
+				int n = p.index.length;
+				for (int i = 0; i < n; i++)
+					copyPoint(p.line, p.index[p.reversed ? n - 1 - i : i], l,
+							offset + i, p.reversed);
+				offset += n;
+			}
+			if (closed) {
+				copyPoint(l, 0, l, num, false);
+				l.setContourClass(LinesUtil.contour_class.cont_closed);
+			}
+		}
+	}
+
+	/* An end of a piece at which its line was cut by a border. */
+	static final class CutEnd {
+		final Piece piece;
+		/* True for the start of the piece, false for its end */
+		final boolean pieceStart;
+		/* The part of the piece, and the part beyond the border */
+		final int part, neighbourPart;
+		/* Last point of the piece and the first point beyond the border */
+		final float x, y, nx, ny;
+
+		CutEnd(Piece piece, boolean pieceStart, int part, int neighbourPart,
+				float x, float y, float nx, float ny) {
+			this.piece = piece;
+			this.pieceStart = pieceStart;
+			this.part = part;
+			this.neighbourPart = neighbourPart;
+			this.x = x;
+			this.y = y;
+			this.nx = nx;
+			this.ny = ny;
+		}
+	}
+
+	/*
+	 * Splits a line of a part into the runs of points that the part owns and
+	 * adds them to the pieces; the ends that were cut at a border are added
+	 * to the cut ends. A closed line starts at a point that is not owned and
+	 * wraps around; its last point, which repeats the first, is left out.
+	 *
+	 * @return the piece of each point of the line, null if not owned
+	 */
+	static Piece[] cut(Line l, boolean closed, int part, Owner owner,
+			List<Piece> pieces, List<CutEnd> cutEnds) {
+		int n = l.num;
+		boolean[] own = new boolean[n];
+		Piece[] piece = new Piece[n];
+		int owned = 0;
+		for (int i = 0; i < n; i++) {
+			own[i] = owner.partOf(l.col[i], l.row[i]) == part;
+			if (own[i])
+				owned++;
+		}
+		if (owned == 0)
+			return piece;
+		if (owned == n) {
+			int[] index = new int[n];
+			for (int i = 0; i < n; i++)
+				index[i] = i;
+			Piece p = new Piece(l, index);
+			pieces.add(p);
+			Arrays.fill(piece, p);
+			return piece;
+		}
+
+		int m = closed ? n - 1 : n;
+		int first = 0;
+		if (closed)
+			while (own[first])
+				first++;
+		int[] order = new int[m];
+		for (int i = 0; i < m; i++)
+			order[i] = (first + i) % m;
+
+		int a = 0;
+		while (a < m) {
+			if (!own[order[a]]) {
+				a++;
+				continue;
+			}
+			int b = a;
+			while (b + 1 < m && own[order[b + 1]])
+				b++;
+			Piece p = new Piece(l, Arrays.copyOfRange(order, a, b + 1));
+			pieces.add(p);
+			for (int i : p.index)
+				piece[i] = p;
+			if (closed || a > 0)
+				addCutEnd(cutEnds, p, true, part, owner, l, order[a],
+						order[a > 0 ? a - 1 : m - 1]);
+			if (closed || b < m - 1)
+				addCutEnd(cutEnds, p, false, part, owner, l, order[b],
+						order[b < m - 1 ? b + 1 : 0]);
+			a = b + 1;
+		}
+		if (closed)
+			piece[n - 1] = piece[0];
+		return piece;
+	}
+
+	private static void addCutEnd(List<CutEnd> cutEnds, Piece p,
+			boolean pieceStart, int part, Owner owner, Line l, int i,
+			int neighbour) {
+		cutEnds.add(new CutEnd(p, pieceStart, part, owner.partOf(
+				l.col[neighbour], l.row[neighbour]), l.col[i], l.row[i],
+				l.col[neighbour], l.row[neighbour]));
+	}
+
+	/*
+	 * Joins the chains of the cut ends of neighbouring parts. Two cut ends
+	 * match if each of them was cut towards the part of the other one and
+	 * their last points are close. The closest matches are joined first,
+	 * measured by the distance of the first point beyond the border of each
+	 * end from the last point of the other one; for the same line point in
+	 * both parts it is 0.
+	 */
+	static void join(List<CutEnd> cutEnds) {
+		PointGrid grid = new PointGrid(MAX_SEAM_GAP);
+		for (int i = 0; i < cutEnds.size(); i++)
+			grid.add(cutEnds.get(i).x, cutEnds.get(i).y, i);
+
+		final List<int[]> pairs = new ArrayList<int[]>();
+		final List<Double> distances = new ArrayList<Double>();
+		for (int i = 0; i < cutEnds.size(); i++) {
+			CutEnd e1 = cutEnds.get(i);
+			int n = grid.query(e1.x, e1.y, MAX_SEAM_GAP);
+			int[] candidates = grid.getResult();
+			for (int c = 0; c < n; c++) {
+				int j = candidates[c];
+				CutEnd e2 = cutEnds.get(j);
+				if (j <= i || e1.neighbourPart != e2.part
+						|| e2.neighbourPart != e1.part
+						|| distance(e1.x, e1.y, e2.x, e2.y) > MAX_SEAM_GAP)
+					continue;
+				pairs.add(new int[] { i, j });
+				distances.add(distance(e1.nx, e1.ny, e2.x, e2.y)
+						+ distance(e2.nx, e2.ny, e1.x, e1.y));
+			}
+		}
+		Integer[] byDistance = new Integer[pairs.size()];
+		for (int k = 0; k < byDistance.length; k++)
+			byDistance[k] = k;
+		Arrays.sort(byDistance, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer a, Integer b) {
+				int c = Double.compare(distances.get(a), distances.get(b));
+				return c != 0 ? c : a.compareTo(b);
+			}
+		});
+		boolean[] joined = new boolean[cutEnds.size()];
+		for (Integer k : byDistance) {
+			int i = pairs.get(k)[0], j = pairs.get(k)[1];
+			if (!joined[i] && !joined[j]) {
+				joined[i] = joined[j] = true;
+				join(cutEnds.get(i), cutEnds.get(j));
+			}
+		}
+	}
+
+	/* Joins the chains of two cut ends. */
+	private static void join(CutEnd e1, CutEnd e2) {
+		Chain c1 = e1.piece.getChain();
+		Chain c2 = e2.piece.getChain();
+		if (c1 == c2) {
+			c1.closed = true;
+			return;
+		}
+		// Let c1 end with e1 and c2 start with e2
+		if (c1.isStart(e1.piece, e1.pieceStart))
+			c1.reverse();
+		if (!c2.isStart(e2.piece, e2.pieceStart))
+			c2.reverse();
+		c1.pieces.addAll(c2.pieces);
+		c2.pieces.clear();
+		c2.mergedInto = c1;
+	}
+
+	/*
+	 * Allocates num points for l, with the same optional arrays as the
+	 * template.
+	 */
+	static void allocatePoints(Line l, Line template, int num) {
+		l.num = num;
+		l.row = new float[num];
+		l.col = new float[num];
+		l.angle = new float[num];
+		l.response = new float[num];
+		l.width_l = template.width_l == null ? null : new float[num];
+		l.width_r = template.width_r == null ? null : new float[num];
+		l.asymmetry = template.asymmetry == null ? null : new float[num];
+		l.intensity = template.intensity == null ? null : new float[num];
+	}
+
+	/*
+	 * Copies a point of a line. If the point is copied into a line that
+	 * runs in the opposite direction, the normal points to the other side,
+	 * so the widths to the left and right and the sign of the asymmetry
+	 * are exchanged.
+	 */
+	static void copyPoint(Line from, int i, Line to, int j,
+			boolean reversed) {
+		to.row[j] = from.row[i];
+		to.col[j] = from.col[i];
+		to.response[j] = from.response[i];
+		double angle = from.angle[i];
+		if (reversed) {
+			angle += Math.PI;
+			if (angle >= 2.0 * Math.PI)
+				angle -= 2.0 * Math.PI;
+		}
+		to.angle[j] = (float) angle;
+		float[] left = reversed ? from.width_r : from.width_l;
+		float[] right = reversed ? from.width_l : from.width_r;
+		if (to.width_l != null && left != null)
+			to.width_l[j] = left[i];
+		if (to.width_r != null && right != null)
+			to.width_r[j] = right[i];
+		if (to.asymmetry != null && from.asymmetry != null)
+			to.asymmetry[j] = reversed ? -from.asymmetry[i]
+					: from.asymmetry[i];
+		if (to.intensity != null && from.intensity != null)
+			to.intensity[j] = from.intensity[i];
+	}
+
+	static int nearestPoint(Line l, float x, float y) {
+		int best = 0;
+		double min = Double.MAX_VALUE;
+		for (int i = 0; i < l.num; i++) {
+			double d = distance(l.col[i], l.row[i], x, y);
+			if (d < min) {
+				min = d;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	static double distance(float x1, float y1, float x2, float y2) {
+		double dx = x1 - x2, dy = y1 - y2;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+}
@@ -24,14 +24,16 @@ package de.biomedical_imaging.ij.steger;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import de.biomedical_imaging.ij.steger.LinesUtil.contour_class;
-import ij.IJ;
 
 /**
  * Resolve overlap between lines by selecting the fragment with the closest
@@ -57,19 +59,31 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 	private static final float STRAIGHT_TOLERANCE = 1.02f;
 
 	@Override
-	public Lines resolve(final Lines originalLines, final Junctions junctions,
+	public Lines resolve(final Lines lines, final Junctions junctions,
 		final boolean verbose)
 	{
-		if (verbose) IJ.log("### Overlap detection using Slope heuristic");
+		if (verbose) LinesUtil.LOGGER.info("### Overlap detection using Slope heuristic");
 
-		final Set<Line> enclosedLines = new HashSet<Line>();
+		return super.resolve(lines, junctions, verbose);
+	}
+
+	@Override
+	protected double getInteractionDistance() {
+		return SIGMA;
+	}
+
+	@Override
+	protected Lines resolveGroup(final Lines originalLines,
+		final Junctions junctions, final boolean verbose)
+	{
+		final Set<Line> enclosedLines = new LinkedHashSet<Line>();
 		final List<List<Line>> nWayIntersections = new ArrayList<List<Line>>();
 		findOverlap(enclosedLines, nWayIntersections, junctions, verbose);
 
 		final Map<Line, List<Line>> startIntersections =
-			new HashMap<Line, List<Line>>();
+			new LinkedHashMap<Line, List<Line>>();
 		final Map<Line, List<Line>> endIntersections =
-			new HashMap<Line, List<Line>>();
+			new LinkedHashMap<Line, List<Line>>();
 
 		buildIntersectionMaps(originalLines, enclosedLines, startIntersections,
 			endIntersections, verbose);
@@ -98,8 +112,8 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 		final boolean verbose)
 	{
 		// Remember if a Junction is located at the start or end point of a Line
-		Map<Line, Junction> startMatches = new HashMap<Line, Junction>();
-		Map<Line, Junction> endMatches = new HashMap<Line, Junction>();
+		Map<Line, Junction> startMatches = new LinkedHashMap<Line, Junction>();
+		Map<Line, Junction> endMatches = new LinkedHashMap<Line, Junction>();
 
 		// These enclosed lines will be treated as areas of overlap
 		for (final Junction j : junctions) {
@@ -113,11 +127,11 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 
 		if (verbose) {
 			for (final Line l : startMatches.keySet()) {
-				IJ.log("Found line " + l.getID() + " intersects with junction " +
+				LinesUtil.LOGGER.info("Found line " + l.getID() + " intersects with junction " +
 					startMatches.get(l) + " at line start");
 			}
 			for (final Line l : endMatches.keySet()) {
-				IJ.log("Found line " + l.getID() + " intersects with junction " +
+				LinesUtil.LOGGER.info("Found line " + l.getID() + " intersects with junction " +
 					endMatches.get(l) + " at line end");
 			}
 		}
@@ -128,43 +142,46 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 		// tSections will contain lines that intersect at the same point as 2+ other
 		// lines
 		// none of which are enclosed
-		final Set<Line> tSections = new HashSet<Line>(startMatches.keySet());
+		final Set<Line> tSections = new LinkedHashSet<Line>(startMatches.keySet());
 		tSections.addAll(endMatches.keySet());
 		tSections.removeAll(enclosed);
 		final List<List<Line>> lineSets = new ArrayList<List<Line>>();
 
+		// Endpoints of the lines that are already in a line set, and the index of
+		// the set each of these lines is in
+		final List<Line> grouped = new ArrayList<Line>();
+		final int[] groupOf = new int[tSections.size()];
+		final PointGrid groupedEnds = new PointGrid(SIGMA);
+
 		// Build our list of intersecting sets
 		for (final Line l1 : tSections) {
-			boolean found = false;
-
-			// search all line sets until we find an intersection with
+			// search the line sets for the first one with an intersection with
 			// the current line
-			for (int i = 0; i < lineSets.size() && !found; i++) {
-				final List<Line> intersects = lineSets.get(i);
-
-				for (int j = 0; j < intersects.size() && !found; j++) {
-					final Line l2 = intersects.get(j);
-
-					// NB: we do not need to take the extra step of ensuring all
-					// lines intersect at the same point (instead of some intersecting at
-					// the start
-					// and some at the end, creating chains) because we have already
-					// filtered out
-					// the "enclosed" segments that would have arisen from that style of
-					// overlap.
-					if (intersects(l1, l2, SIGMA)) {
-						found = true;
-						intersects.add(l1);
-					}
+			int found = -1;
+			for (final int j : findCandidates(groupedEnds, l1)) {
+				final Line l2 = grouped.get(j);
+
+				// NB: we do not need to take the extra step of ensuring all
+				// lines intersect at the same point (instead of some intersecting at
+				// the start
+				// and some at the end, creating chains) because we have already
+				// filtered out
+				// the "enclosed" segments that would have arisen from that style of
+				// overlap.
+				if ((found < 0 || groupOf[j] < found) && intersects(l1, l2, SIGMA)) {
+					found = groupOf[j];
 				}
 			}
 
 			// if no match, start next list
-			if (!found) {
-				final List<Line> lineList = new ArrayList<Line>();
-				lineList.add(l1);
-				lineSets.add(lineList);
+			if (found < 0) {
+				found = lineSets.size();
+				lineSets.add(new ArrayList<Line>());
 			}
+			lineSets.get(found).add(l1);
+			groupOf[grouped.size()] = found;
+			addEndpoints(groupedEnds, l1, grouped.size());
+			grouped.add(l1);
 		}
 
 		// populate nWay intersection list
@@ -178,25 +195,39 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 				sb.append("Found n-way intersection: ");
 				for (final Line l : isect)
 					sb.append(l.getID() + " ");
-				IJ.log(sb.toString());
+				LinesUtil.LOGGER.info(sb.toString());
 			}
 		}
 
 		// clean up enclosed lines.. any enclosed line that intersects with another
 		// enclosed line at BOTH ends should be removed.
 
+		// Index the endpoints of the enclosed lines once; removed lines are
+		// skipped by their index.
+		final List<Line> enclosedList = new ArrayList<Line>(enclosed);
+		final Map<Line, Integer> enclosedIndex = new IdentityHashMap<Line, Integer>();
+		for (int i = 0; i < enclosedList.size(); i++) {
+			enclosedIndex.put(enclosedList.get(i), i);
+		}
+		final boolean[] removed = new boolean[enclosedList.size()];
+		final PointGrid enclosedEnds = indexEndpoints(enclosedList);
+
 		boolean pruneEnclosed = true;
 
 		while (pruneEnclosed) {
 			pruneEnclosed = false;
-			Line toRemove = null;
 
-			for (final Line l1 : enclosed) {
+			// The last line to prune in the iteration order of the set is removed,
+			// so search backwards
+			final Line[] current = enclosed.toArray(new Line[enclosed.size()]);
+			for (int i = current.length - 1; i >= 0 && !pruneEnclosed; i--) {
+				final Line l1 = current[i];
 				boolean foundStartMatch = false;
 				boolean foundEndMatch = false;
 
-				for (final Line l2 : enclosed) {
-					if (l2 == l1) continue;
+				for (final int j : findCandidates(enclosedEnds, l1)) {
+					final Line l2 = enclosedList.get(j);
+					if (removed[j] || l2 == l1) continue;
 					else if (intersectsStart(l1, l2, SIGMA)) foundStartMatch = true;
 					else if (intersectsEnd(l1, l2, SIGMA)) foundEndMatch = true;
 
@@ -206,17 +237,16 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 				// found a line to prune
 				// remove it and restart
 				if (foundStartMatch && foundEndMatch) {
-					toRemove = l1;
+					removed[enclosedIndex.get(l1)] = true;
+					enclosed.remove(l1);
 					pruneEnclosed = true;
 				}
 			}
-
-			if (toRemove != null) enclosed.remove(toRemove);
 		}
 
 		if (verbose) {
 			for (final Line l : enclosed)
-				IJ.log("Found enclosed line: " + l.getID());
+				LinesUtil.LOGGER.info("Found enclosed line: " + l.getID());
 		}
 	}
 
@@ -230,10 +260,13 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 		final Map<Line, List<Line>> startIntersections,
 		final Map<Line, List<Line>> endIntersections, final boolean verbose)
 	{
+		final PointGrid ends = indexEndpoints(lines);
+
 		for (final Line l1 : enclosedLines) {
 			final List<Line> startIsect = new ArrayList<Line>();
 			final List<Line> endIsect = new ArrayList<Line>();
-			for (final Line l2 : lines) {
+			for (final int i : findCandidates(ends, l1)) {
+				final Line l2 = lines.get(i);
 				if (l2 == l1) continue;
 				else if (intersectsStart(l1, l2, SIGMA)) startIsect.add(l2);
 				else if (intersectsEnd(l1, l2, SIGMA)) endIsect.add(l2);
@@ -244,13 +277,13 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 
 		if (verbose) {
 			for (final Line l1 : enclosedLines) {
-				IJ.log("For enclosed line " + l1.getID() +
+				LinesUtil.LOGGER.info("For enclosed line " + l1.getID() +
 					" found intersecting lines: ");
 				for (final Line l2 : startIntersections.get(l1)) {
-					IJ.log("\tat start: " + l2.getID());
+					LinesUtil.LOGGER.info("\tat start: " + l2.getID());
 				}
 				for (final Line l2 : endIntersections.get(l1)) {
-					IJ.log("\tat end: " + l2.getID());
+					LinesUtil.LOGGER.info("\tat end: " + l2.getID());
 				}
 			}
 		}
@@ -376,7 +409,7 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 					sb.append(line.getID());
 					sb.append(" ");
 				}
-				IJ.log(sb.toString());
+				LinesUtil.LOGGER.info(sb.toString());
 			}
 		}
 	}
@@ -450,7 +483,13 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 	private Lines buildResolvedList(final Lines originalLines,
 		final List<List<Line>> lineMerges, final boolean verbose)
 	{
-		final Set<Line> finalLines = new HashSet<Line>(originalLines);
+		final Set<Line> finalLines = new LinkedHashSet<Line>(originalLines);
+
+		// The resolved lines are sorted by the first original line they contain
+		final Map<Line, Integer> order = new IdentityHashMap<Line, Integer>();
+		for (int i = originalLines.size() - 1; i >= 0; i--) {
+			order.put(originalLines.get(i), i);
+		}
 
 		for (final List<Line> toMerge : lineMerges) {
 			// remove the individual, unmerged lines
@@ -458,9 +497,11 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 
 			int newSize = 0;
 			int frame = 0;
+			boolean seeded = true;
 			for (final Line l : toMerge) {
 				frame = l.getFrame();
 				newSize += l.getNumber();
+				seeded &= l.seeded;
 			}
 
 			// build and add the merged line
@@ -469,7 +510,7 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 				merged = toMerge.get(0);
 			}
 			else {
-				merged = new Line();
+				merged = new Line(originalLines.nextID());
 				merged.angle = new float[newSize];
 				merged.asymmetry = new float[newSize];
 				merged.col = new float[newSize];
@@ -481,6 +522,7 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 				merged.num = newSize;
 				merged.setContourClass(contour_class.cont_closed);
 				merged.setFrame(frame);
+				merged.seeded = seeded;
 
 				// Get the enclosed line
 
@@ -511,10 +553,32 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 			}
 
 			finalLines.add(merged);
+			if (merged != toMerge.get(0)) {
+				int first = Integer.MAX_VALUE;
+				for (final Line l : toMerge) {
+					final Integer i = order.get(l);
+					if (i != null) first = Math.min(first, i);
+				}
+				order.put(merged, first);
+			}
 		}
 
+		final List<Line> sortedLines = new ArrayList<Line>(finalLines);
+		Collections.sort(sortedLines, new Comparator<Line>() {
+
+			@Override
+			public int compare(final Line l1, final Line l2) {
+				final Integer o1 = order.get(l1);
+				final Integer o2 = order.get(l2);
+				if (o1 == null) return o2 == null ? 0 : 1;
+				if (o2 == null) return -1;
+				return o1.compareTo(o2);
+			}
+		});
+
 		final Lines resolvedLines = new Lines(originalLines.getFrame());
-		resolvedLines.addAll(finalLines);
+		resolvedLines.continueIDs(originalLines);
+		resolvedLines.addAll(sortedLines);
 
 		return resolvedLines;
 	}
@@ -630,6 +694,56 @@ public class SlopeOverlapResolver extends AbstractOverlapResolver {
 		return points.get(points.size() - 2);
 	}
 
+	/**
+	 * Builds an index of the start and end points of the given lines. The value
+	 * of a point is the index of its line in the list.
+	 */
+	private PointGrid indexEndpoints(final List<Line> lines) {
+		final PointGrid grid = new PointGrid(SIGMA);
+		for (int i = 0; i < lines.size(); i++) {
+			addEndpoints(grid, lines.get(i), i);
+		}
+		return grid;
+	}
+
+	private void addEndpoints(final PointGrid grid, final Line line,
+		final int index)
+	{
+		grid.add(line.getXCoordinates()[0], line.getYCoordinates()[0], index);
+		grid.add(line.getXCoordinates()[line.getNumber() - 1], line
+			.getYCoordinates()[line.getNumber() - 1], index);
+	}
+
+	/**
+	 * @return the indices of all lines in the index that may intersect the given
+	 *         line at its start or end point, in ascending order. These are a
+	 *         superset of the lines that intersect within {@link #SIGMA}.
+	 */
+	private int[] findCandidates(final PointGrid grid, final Line line) {
+		int n = grid.query(line.getXCoordinates()[0], line.getYCoordinates()[0],
+			SIGMA);
+		final int[] atStart = Arrays.copyOf(grid.getResult(), n);
+		n = grid.query(line.getXCoordinates()[line.getNumber() - 1], line
+			.getYCoordinates()[line.getNumber() - 1], SIGMA);
+		final int[] atEnd = grid.getResult();
+
+		// merge both sorted lists
+		final int[] candidates = new int[atStart.length + n];
+		int i = 0, j = 0, k = 0;
+		while (i < atStart.length || j < n) {
+			final int next;
+			if (j == n || (i < atStart.length && atStart[i] < atEnd[j])) next =
+				atStart[i++];
+			else if (i == atStart.length || atEnd[j] < atStart[i]) next = atEnd[j++];
+			else {
+				next = atStart[i++];
+				j++;
+			}
+			candidates[k++] = next;
+		}
+		return Arrays.copyOf(candidates, k);
+	}
+
 	/**
 	 * @return true iff the two specified lines intersect at their start or end
 	 *         points
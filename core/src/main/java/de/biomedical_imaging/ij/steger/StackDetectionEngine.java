@@ -0,0 +1,267 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Detects the lines in all frames of a stack. The frames are scheduled on a
+ * work-stealing fork/join pool; the parallel stages within a frame fork into
+ * the same pool, so the threads of the pool are the only ones that do work.
+ * The threads are split between frames and the stages within a frame (see
+ * {@link #schedule}). Every frame is detected with its own state and numbers
+ * its lines from 0. When all frames are done, the frames get consecutive ID
+ * ranges in frame order, so the result is the same for any number of
+ * threads.
+ */
+public class StackDetectionEngine {
+
+	/**
+	 * Provides the grey values of the frames of a stack. It is called from
+	 * several threads at once.
+	 */
+	public interface FrameSource {
+		/**
+		 * @param frame
+		 *            Slice number, starting with 1
+		 * @return the grey values of the frame
+		 */
+		PixelData getFrame(int frame);
+
+		/**
+		 * @return the width of the frames
+		 */
+		int getWidth();
+
+		/**
+		 * @return the height of the frames
+		 */
+		int getHeight();
+	}
+
+	/**
+	 * How the threads are split between frames and the stages within a
+	 * frame.
+	 */
+	public static class Schedule {
+		private final int parallelism;
+		private final int parallelFrames;
+		private final int threadsPerFrame;
+
+		Schedule(int parallelism, int parallelFrames, int threadsPerFrame) {
+			this.parallelism = parallelism;
+			this.parallelFrames = parallelFrames;
+			this.threadsPerFrame = threadsPerFrame;
+		}
+
+		/**
+		 * @return the total number of threads
+		 */
+		public int getParallelism() {
+			return parallelism;
+		}
+
+		/**
+		 * @return the number of frames that are detected at the same time
+		 */
+		public int getParallelFrames() {
+			return parallelFrames;
+		}
+
+		/**
+		 * @return the number of bands into which the stages of a frame are
+		 *         split
+		 */
+		public int getThreadsPerFrame() {
+			return threadsPerFrame;
+		}
+
+		@Override
+		public String toString() {
+			return parallelism + " threads: " + parallelFrames
+					+ " frames in parallel, " + threadsPerFrame
+					+ " threads per frame";
+		}
+	}
+
+	/* Estimated memory per pixel of a frame in flight: the five derivative
+	   images, the eigenvalue, normal and position images, the temporary image
+	   of the convolution and the labels of the hysteresis. */
+	private static final long WORKSPACE_BYTES_PER_PIXEL = 56;
+
+	/* Minimum number of pixels per thread within a frame.  Smaller frames are
+	   only processed in parallel with other frames. */
+	private static final long MIN_PIXELS_PER_THREAD = 1 << 18;
+
+	private final int parallelism;
+
+	/**
+	 * Creates an engine that uses all available processors.
+	 */
+	public StackDetectionEngine() {
+		this(Parallel.getParallelism());
+	}
+
+	/**
+	 * @param parallelism
+	 *            Number of threads that detect the frames
+	 */
+	public StackDetectionEngine(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism " + parallelism
+					+ " < 1");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Splits the threads between frames and the stages within a frame. As
+	 * many frames as possible are detected at the same time, since the
+	 * frames are independent and their stages have sequential parts. The
+	 * number of frames is limited by the number of frames, the memory that
+	 * the frames in flight need, and for large frames by the number of
+	 * threads that a frame can keep busy. The remaining threads are shared by
+	 * the stages of the frames; idle threads also steal work from other
+	 * frames.
+	 * 
+	 * @param numFrames
+	 *            Number of frames of the stack
+	 * @param width
+	 *            Width of the frames
+	 * @param height
+	 *            Height of the frames
+	 * @return the split of the threads
+	 */
+	public Schedule schedule(int numFrames, int width, int height) {
+		long pixels = Math.max(1, (long) width * height);
+		long byMemory = Runtime.getRuntime().maxMemory()
+				/ (WORKSPACE_BYTES_PER_PIXEL * pixels);
+		long threadsPerFrame = Math.max(1, Math.min(parallelism, pixels
+				/ MIN_PIXELS_PER_THREAD));
+		long frames = Math.min(numFrames, parallelism);
+		// Large frames keep several threads busy, so fewer of them are needed
+		frames = Math.min(frames, Math.max(1, parallelism / threadsPerFrame
+				+ (parallelism % threadsPerFrame == 0 ? 0 : 1)));
+		frames = Math.max(1, Math.min(frames, byMemory));
+		threadsPerFrame = (parallelism + frames - 1) / frames;
+		return new Schedule(parallelism, (int) frames, (int) threadsPerFrame);
+	}
+
+	/**
+	 * Detects the lines in the frames 1 to numFrames.
+	 * 
+	 * @param source
+	 *            Provides the frames
+	 * @param numFrames
+	 *            Number of frames of the stack
+	 * @param config
+	 *            The parameters of the detection, used for all frames
+	 * @return the results of the frames in frame order
+	 * @throws IllegalArgumentException
+	 *             if sigma is out of range for a frame
+	 */
+	public List<DetectionResult> detect(final FrameSource source,
+			int numFrames, final DetectionConfig config) {
+		return detect(source, null, numFrames, config);
+	}
+
+	/**
+	 * As {@link #detect(FrameSource, int, DetectionConfig)}, but only finds
+	 * line points within a mask that is the same for all frames.
+	 * 
+	 * @param mask
+	 *            One value per pixel of a frame, row by row; the pixels with
+	 *            a value other than 0 belong to the mask. If null, the whole
+	 *            frames are searched.
+	 */
+	public List<DetectionResult> detect(final FrameSource source,
+			final byte[] mask, int numFrames, final DetectionConfig config) {
+		final LineDetectionEngine engine = new LineDetectionEngine();
+		final AtomicReferenceArray<DetectionResult> frames = new AtomicReferenceArray<DetectionResult>(
+				numFrames);
+
+		final Schedule schedule = schedule(numFrames, source.getWidth(),
+				source.getHeight());
+		if (config.isVerbose())
+			LinesUtil.LOGGER.info("Stack of " + numFrames + " frames, "
+					+ schedule);
+
+		// Each lane detects the next frame that is not taken yet
+		final AtomicInteger nextFrame = new AtomicInteger(0);
+		final int frameCount = numFrames;
+		final RecursiveAction[] tasks = new RecursiveAction[schedule
+				.getParallelFrames()];
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					int previous = Parallel.setBandLimit(schedule
+							.getThreadsPerFrame());
+					try {
+						int frame;
+						while ((frame = nextFrame.getAndIncrement()) < frameCount)
+							frames.set(frame, engine.detectFrame(
+									source.getFrame(frame + 1), mask, frame + 1,
+									config, CancellationToken.NONE));
+					} finally {
+						Parallel.setBandLimit(previous);
+					}
+				}
+			};
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					invokeAll(tasks);
+				}
+			});
+		} finally {
+			pool.shutdown();
+		}
+
+		// Assign the ID ranges in frame order
+		int numIDs = 0;
+		for (int i = 0; i < numFrames; i++)
+			numIDs += frames.get(i).getLines().getNumIDs();
+		int firstID = Line.reserveIDs(numIDs);
+		List<DetectionResult> results = new ArrayList<DetectionResult>(
+				numFrames);
+		for (int i = 0; i < numFrames; i++) {
+			Lines lines = frames.get(i).getLines();
+			lines.rebaseIDs(firstID);
+			firstID += lines.getNumIDs();
+			results.add(frames.get(i));
+		}
+		return Collections.unmodifiableList(results);
+	}
+}
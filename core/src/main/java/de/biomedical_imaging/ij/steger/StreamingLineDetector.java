@@ -0,0 +1,402 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Detects lines in an image of unbounded height that arrives row by row,
+ * e.g., from a line-scan camera. The rows are kept in a rolling window and
+ * detected in blocks of rows, each with a halo above and below as in the
+ * {@link TiledDetectionEngine}. The pieces of a line that cross the border
+ * between two blocks are joined. A line is emitted as soon as it cannot
+ * grow any more, i.e., when none of its ends was cut by the last detected
+ * block. The memory does not depend on the height of the image, and a line
+ * is emitted at most a block plus two halos of rows after its last point
+ * arrived.
+ * <p>
+ * The weak regions of line points that may reach beyond a block are linked
+ * as if they reached a point above the high threshold, as in a
+ * {@link TiledDetectionEngine}. A joined line is kept only if one of its
+ * pieces was started at such a point, as every line of the whole image is.
+ * Each block is post-processed on its own, so a line may still be split at
+ * the junction of a weak branch that is dropped.
+ * <p>
+ * The lines get their IDs when they are emitted. The junctions are emitted
+ * once both of their lines are; they refer to their lines with
+ * {@link Junction#getLine1()} and {@link Junction#getLine2()} only. An
+ * instance must not be used by several threads at once.
+ */
+public class StreamingLineDetector {
+
+	/* Minimum number of rows of a block */
+	private static final int MIN_BLOCK_ROWS = 64;
+
+	private final int width;
+	private final int frame;
+	private final DetectionConfig config;
+	private final int halo;
+	private final int blockRows;
+	private final LineDetectionEngine engine = new LineDetectionEngine();
+
+	/* The rows [bufferStart, nextRow) of the image */
+	private final float[] buffer;
+	private int bufferStart = 0;
+	private int nextRow = 0;
+	/* First row and number of the next block */
+	private int blockStart = 0;
+	private int block = 0;
+	private boolean finished = false;
+
+	/* The ends of the lines that were cut at the bottom of the last block */
+	private List<SeamJoiner.CutEnd> openEnds = new ArrayList<SeamJoiner.CutEnd>();
+	/* Junctions of which not both lines are emitted yet */
+	private final List<PendingJunction> pendingJunctions = new ArrayList<PendingJunction>();
+
+	private final List<Line> lines = new ArrayList<Line>();
+	private final List<Junction> junctions = new ArrayList<Junction>();
+
+	/**
+	 * @param width
+	 *            Width of the rows
+	 * @param frame
+	 *            Slice number that is assigned to the lines
+	 * @param config
+	 *            Parameters of the detection
+	 * @throws IllegalArgumentException
+	 *             if sigma is out of range for the width
+	 */
+	public StreamingLineDetector(int width, int frame, DetectionConfig config) {
+		if (LineDetectionEngine.getKernelRadius(config.getSigma()) >= width)
+			throw new IllegalArgumentException(LinesUtil.ERR_SOR
+					+ " too large for image size");
+		this.width = width;
+		this.frame = frame;
+		this.config = config;
+		halo = TiledDetectionEngine.getHalo(config.getSigma());
+		blockRows = Math.max(MIN_BLOCK_ROWS, 2 * halo);
+		buffer = new float[(blockRows + 2 * halo) * width];
+	}
+
+	/**
+	 * @return the number of rows after which the lines of a row are emitted
+	 *         at the latest, if they do not continue below it
+	 */
+	public int getLatency() {
+		return blockRows + 2 * halo;
+	}
+
+	/**
+	 * Adds the next row of the image.
+	 */
+	public void addRow(float[] row) {
+		checkRow(row.length);
+		System.arraycopy(row, 0, buffer, (nextRow - bufferStart) * width,
+				width);
+		rowAdded();
+	}
+
+	/**
+	 * As {@link #addRow(float[])} for unsigned 8-bit grey values.
+	 */
+	public void addRow(byte[] row) {
+		int offset = (nextRow - bufferStart) * width;
+		checkRow(row.length);
+		for (int c = 0; c < width; c++)
+			buffer[offset + c] = row[c] & 0xff;
+		rowAdded();
+	}
+
+	/**
+	 * As {@link #addRow(float[])} for unsigned 16-bit grey values.
+	 */
+	public void addRow(short[] row) {
+		int offset = (nextRow - bufferStart) * width;
+		checkRow(row.length);
+		for (int c = 0; c < width; c++)
+			buffer[offset + c] = row[c] & 0xffff;
+		rowAdded();
+	}
+
+	/**
+	 * Detects the lines in the remaining rows and emits all lines. No rows
+	 * can be added afterwards.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if sigma is too large for the height of the image
+	 */
+	public void finish() {
+		if (finished)
+			return;
+		finished = true;
+		if (nextRow > blockStart)
+			detectBlock(nextRow);
+		Set<SeamJoiner.Chain> growing = new HashSet<SeamJoiner.Chain>();
+		for (SeamJoiner.CutEnd e : openEnds)
+			complete(e.piece.getChain(), growing);
+		openEnds = new ArrayList<SeamJoiner.CutEnd>();
+		emitJunctions();
+	}
+
+	/**
+	 * @return the lines that were emitted since the last call
+	 */
+	public List<Line> pollLines() {
+		List<Line> result = new ArrayList<Line>(lines);
+		lines.clear();
+		return result;
+	}
+
+	/**
+	 * @return the junctions that were emitted since the last call
+	 */
+	public List<Junction> pollJunctions() {
+		List<Junction> result = new ArrayList<Junction>(junctions);
+		junctions.clear();
+		return result;
+	}
+
+	private void checkRow(int length) {
+		if (finished)
+			throw new IllegalStateException("Detection is finished");
+		if (length < width)
+			throw new IllegalArgumentException("Row of length " + length
+					+ " < " + width);
+	}
+
+	private void rowAdded() {
+		nextRow++;
+		if (nextRow == blockStart + blockRows + halo)
+			detectBlock(blockStart + blockRows);
+	}
+
+	/*
+	 * Detects the block of the rows [blockStart, blockEnd) and drops the
+	 * rows that are not needed by the next block.
+	 */
+	private void detectBlock(int blockEnd) {
+		int windowStart = Math.max(0, blockStart - halo);
+		int windowEnd = Math.min(nextRow, blockEnd + halo);
+		ResponseField response = engine.computeResponse(PixelData.of(buffer,
+				width, windowEnd - bufferStart).crop(0,
+				windowStart - bufferStart, width, windowEnd - windowStart),
+				null, config, CancellationToken.NONE);
+		TileRegions regions = new TileRegions(response, 0, windowStart, width,
+				finished ? nextRow : Integer.MAX_VALUE, config);
+		DetectionResult result = engine.detectFrame(response,
+				regions.getSeed(), frame, config, CancellationToken.NONE);
+		result.translate(0, windowStart);
+		mergeBlock(result, blockStart == 0, finished, blockEnd);
+
+		blockStart = blockEnd;
+		block++;
+		int drop = Math.max(0, blockStart - halo) - bufferStart;
+		if (drop > 0) {
+			System.arraycopy(buffer, drop * width, buffer, 0, (nextRow
+					- bufferStart - drop)
+					* width);
+			bufferStart += drop;
+		}
+	}
+
+	private static class PendingJunction {
+		final float x, y;
+		final SeamJoiner.Piece piece1, piece2;
+
+		PendingJunction(float x, float y, SeamJoiner.Piece piece1,
+				SeamJoiner.Piece piece2) {
+			this.x = x;
+			this.y = y;
+			this.piece1 = piece1;
+			this.piece2 = piece2;
+		}
+	}
+
+	/*
+	 * Cuts the lines of a block into the pieces that it owns, joins them
+	 * with the lines that were cut at the bottom of the previous block and
+	 * emits the lines that cannot grow any more.
+	 */
+	private void mergeBlock(DetectionResult result, final boolean first,
+			final boolean last, final int blockEnd) {
+		// The rows above the block belong to the previous block, the rows
+		// below it to the next one
+		SeamJoiner.Owner owner = new SeamJoiner.Owner() {
+
+			@Override
+			public int partOf(float x, float y) {
+				int r = (int) Math.floor(y + 0.5);
+				if (!first && r < blockStart)
+					return block - 1;
+				if (!last && r >= blockEnd)
+					return block + 1;
+				return block;
+			}
+		};
+		List<SeamJoiner.Piece> pieces = new ArrayList<SeamJoiner.Piece>();
+		List<SeamJoiner.CutEnd> cutEnds = new ArrayList<SeamJoiner.CutEnd>();
+		Map<Line, SeamJoiner.Piece[]> pieceOfPoint = new IdentityHashMap<Line, SeamJoiner.Piece[]>();
+		for (Line l : result.getLines())
+			// The result may list a line twice; it is cut only once
+			if (!pieceOfPoint.containsKey(l))
+				pieceOfPoint.put(l, SeamJoiner.cut(l, l.getContourClass()
+						== LinesUtil.contour_class.cont_closed, block, owner,
+						pieces, cutEnds));
+
+		// Join the lines at the top of the block
+		List<SeamJoiner.CutEnd> topEnds = new ArrayList<SeamJoiner.CutEnd>(openEnds);
+		List<SeamJoiner.CutEnd> bottomEnds = new ArrayList<SeamJoiner.CutEnd>();
+		for (SeamJoiner.CutEnd e : cutEnds) {
+			if (e.neighbourPart < block)
+				topEnds.add(e);
+			else
+				bottomEnds.add(e);
+		}
+		SeamJoiner.join(topEnds);
+
+		// Keep the junctions that the block owns
+		for (Junction j : result.getJunctions()) {
+			if (owner.partOf(j.x, j.y) != block)
+				continue;
+			SeamJoiner.Piece p1 = nearestPiece(pieceOfPoint, j.getLine1(), j.x, j.y);
+			SeamJoiner.Piece p2 = nearestPiece(pieceOfPoint, j.getLine2(), j.x, j.y);
+			if (p1 != null && p2 != null)
+				pendingJunctions.add(new PendingJunction(j.x, j.y, p1, p2));
+		}
+
+		// Lines that are not cut at the bottom of the block are complete
+		Set<SeamJoiner.Chain> growing = new HashSet<SeamJoiner.Chain>();
+		for (SeamJoiner.CutEnd e : bottomEnds)
+			growing.add(e.piece.getChain());
+		for (SeamJoiner.CutEnd e : openEnds)
+			complete(e.piece.getChain(), growing);
+		for (SeamJoiner.Piece p : pieces)
+			complete(p.getChain(), growing);
+		openEnds = bottomEnds;
+		emitJunctions();
+	}
+
+	/*
+	 * Emits a chain that cannot grow any more, unless it is emitted already.
+	 * A chain of lines that were only started at seeded points is dropped.
+	 */
+	private void complete(SeamJoiner.Chain c, Set<SeamJoiner.Chain> growing) {
+		if (c.line != null || c.dropped || growing.contains(c))
+			return;
+		if (!c.isStrong()) {
+			c.dropped = true;
+			return;
+		}
+		Line l = new Line();
+		l.setFrame(frame);
+		c.copyTo(l);
+		if (!c.closed)
+			l.setContourClass(getContourClass(c));
+		c.line = l;
+		lines.add(l);
+	}
+
+	/* The class of the line of a chain that is not closed. */
+	private static LinesUtil.contour_class getContourClass(SeamJoiner.Chain c) {
+		SeamJoiner.Piece start = c.pieces.getFirst();
+		SeamJoiner.Piece end = c.pieces.getLast();
+		if (c.pieces.size() == 1 && start.index.length == start.line.num)
+			return start.line.getContourClass();
+		boolean startJunction = hasJunction(start, !start.isReversed());
+		boolean endJunction = hasJunction(end, end.isReversed());
+		if (startJunction && endJunction)
+			return LinesUtil.contour_class.cont_both_junc;
+		else if (startJunction)
+			return LinesUtil.contour_class.cont_start_junc;
+		else if (endJunction)
+			return LinesUtil.contour_class.cont_end_junc;
+		return LinesUtil.contour_class.cont_no_junc;
+	}
+
+	/*
+	 * True if the start or the end of the piece is the start or the end of a
+	 * line that is not closed and has a junction there.
+	 */
+	private static boolean hasJunction(SeamJoiner.Piece p, boolean pieceStart) {
+		LinesUtil.contour_class cls = p.line.getContourClass();
+		if (pieceStart)
+			return p.index[0] == 0
+					&& (cls == LinesUtil.contour_class.cont_start_junc
+					|| cls == LinesUtil.contour_class.cont_both_junc);
+		return p.index[p.index.length - 1] == p.line.num - 1
+				&& (cls == LinesUtil.contour_class.cont_end_junc
+				|| cls == LinesUtil.contour_class.cont_both_junc);
+	}
+
+	/* Emits the junctions of which both lines are emitted. */
+	private void emitJunctions() {
+		Iterator<PendingJunction> it = pendingJunctions.iterator();
+		while (it.hasNext()) {
+			PendingJunction p = it.next();
+			SeamJoiner.Chain c1 = p.piece1.getChain();
+			SeamJoiner.Chain c2 = p.piece2.getChain();
+			if (c1.dropped || c2.dropped) {
+				it.remove();
+				continue;
+			}
+			if (c1.line == null || c2.line == null)
+				continue;
+			Junction j = new Junction();
+			j.x = p.x;
+			j.y = p.y;
+			j.cont1 = -1;
+			j.cont2 = -1;
+			j.lineCont1 = c1.line;
+			j.lineCont2 = c2.line;
+			j.pos = SeamJoiner.nearestPoint(c1.line, p.x, p.y);
+			junctions.add(j);
+			it.remove();
+		}
+	}
+
+	/*
+	 * The piece of the owned point of a line of the block that is closest
+	 * to (x,y), or null if the block owns no point of the line.
+	 */
+	private static SeamJoiner.Piece nearestPiece(
+			Map<Line, SeamJoiner.Piece[]> pieceOfPoint, Line l, float x, float y) {
+		SeamJoiner.Piece[] piece = l == null ? null : pieceOfPoint.get(l);
+		if (piece == null)
+			return null;
+		SeamJoiner.Piece best = null;
+		double min = Double.MAX_VALUE;
+		for (int i = 0; i < l.num; i++) {
+			double d = SeamJoiner.distance(l.col[i], l.row[i], x, y);
+			if (piece[i] != null && d < min) {
+				min = d;
+				best = piece[i];
+			}
+		}
+		return best;
+	}
+}
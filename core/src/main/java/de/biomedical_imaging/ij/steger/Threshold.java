@@ -0,0 +1,135 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+public class Threshold {
+
+	/* Extract all pixels with grey value >= min from the image and return them
+	   as a run-length encoded region.  The rows of the image are split into
+	   bands that are encoded in parallel; the chords of the bands are then
+	   concatenated, so the result is the same as for a single band. */
+	static void threshold(byte[] image, int min,int width,int height,Region out)
+	{
+	  threshold(image,min,width,height,out,
+	            Parallel.numRowBands(width,height));
+	}
+
+	static void threshold(final byte[] image, final int min, final int width,
+	                      final int height, Region out, int bands)
+	{
+	  int   i, num;
+	  final Region[] part;
+
+	  part = new Region[bands];
+	  Parallel.forEachBand(height, bands, new Parallel.BandTask() {
+	    @Override
+	    public void run(int band, int from, int to) {
+	      part[band] = new Region();
+	      threshold_rows(image,min,width,from,to,part[band]);
+	    }
+	  });
+
+	  if (bands == 1) {
+	    out.num = part[0].num;
+	    out.row = part[0].row;
+	    out.cb = part[0].cb;
+	    out.ce = part[0].ce;
+	    return;
+	  }
+	  num = 0;
+	  for (i=0; i<bands; i++)
+	    if (part[i] != null)
+	      num += part[i].num;
+	  out.row = new int[num];
+	  out.cb = new int[num];
+	  out.ce = new int[num];
+	  num = 0;
+	  for (i=0; i<bands; i++) {
+	    if (part[i] == null)
+	      continue;
+	    System.arraycopy(part[i].row,0,out.row,num,part[i].num);
+	    System.arraycopy(part[i].cb,0,out.cb,num,part[i].num);
+	    System.arraycopy(part[i].ce,0,out.ce,num,part[i].num);
+	    num += part[i].num;
+	  }
+	  out.num = num;
+	}
+
+	/* Run-length encode the rows r_start to r_end-1 of the thresholded image. */
+	private static void threshold_rows(byte[] image, int min, int width,
+	                                   int r_start, int r_end, Region out)
+	{
+	  int   grey;
+	  int   r,c,l,num,num_max;
+	  boolean   inside;
+	  int[] rr, rcb, rce;
+
+	  inside = false;
+	  num = 0;
+	  num_max = LinesUtil.INITIAL_SIZE;
+	  rr = new int[num_max];
+	  rcb = new int[num_max];
+	  rce = new int[num_max];
+
+	  for (r=r_start; r<r_end; r++) {
+	    for (c=0; c<width; c++) {
+	      l = LinesUtil.LINCOOR(r,c,width);
+	      grey = image[ l];
+	      if (grey >= min) {
+	        if (!inside) {
+	          inside = true;
+	          rr[ num] = r;
+	          rcb[ num] = c;
+	        }
+	      } else {
+	        if (inside) {
+	          inside = false;
+	          rce[ num] = c - 1;
+	          num++;
+	          if (num >= num_max) {
+	            num_max = num_max*LinesUtil.REALLOC_FACTOR;
+	            rr = java.util.Arrays.copyOf(rr,num_max);
+	            rcb = java.util.Arrays.copyOf(rcb,num_max);
+	            rce = java.util.Arrays.copyOf(rce,num_max);
+	          }
+	        }
+	      }
+	    }
+	    if (inside) {
+	      inside = false;
+	      rce[ num] = width-1;
+	      num++;
+	      if (num >= num_max) {
+	        num_max = num_max*LinesUtil.REALLOC_FACTOR;
+	        rr = java.util.Arrays.copyOf(rr,num_max);
+	        rcb = java.util.Arrays.copyOf(rcb,num_max);
+	        rce = java.util.Arrays.copyOf(rce,num_max);
+	      }
+	    }
+	  }
+	  out.row = java.util.Arrays.copyOf(rr,num);
+	  out.cb = java.util.Arrays.copyOf(rcb,num);
+	  out.ce = java.util.Arrays.copyOf(rce,num);
+	  out.num = num;
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * The seeds of the hysteresis regions of a part of an image that is
+ * detected on its own, i.e., a tile or a block of rows together with its
+ * halo. A region of line points is linked if it contains a point above the
+ * high threshold anywhere in the image, which the part alone cannot decide
+ * for a region that reaches beyond it. The regions are therefore labelled
+ * within the part of the window in which the response is the same as in
+ * the whole image. A region that may continue beyond that part of the
+ * window and has no point above the high threshold in it is seeded, so that
+ * the detection of the part links it; its lines are marked as seeded (see
+ * Line.seeded), and they are dropped after the parts are joined unless they
+ * are joined with a line that was not.
+ */
+final class TileRegions {
+
+	/* The point with the largest response of each weak region that may
+	   continue beyond the window, or null if there is none */
+	private byte[] seed = null;
+
+	/*
+	 * Labels the regions of the response f of the window with the upper left
+	 * corner (hx,hy). imageHeight is Integer.MAX_VALUE if it is not known
+	 * yet.
+	 */
+	TileRegions(ResponseField f, int hx, int hy, int imageWidth,
+			int imageHeight, DetectionConfig config) {
+		int hw = f.width;
+		int hh = f.height;
+		double low = config.getLowerThresh(), high = config.getUpperThresh();
+
+		/*
+		 * The response is exact except within the kernel radius of the sides
+		 * of the window that lie inside of the image.
+		 */
+		int r = LineDetectionEngine.getKernelRadius(config.getSigma());
+		int vx0 = hx > 0 ? r : 0;
+		int vy0 = hy > 0 ? r : 0;
+		int vx1 = (long) hx + hw < imageWidth ? hw - r : hw;
+		int vy1 = (long) hy + hh < imageHeight ? hh - r : hh;
+
+		// Label the 8-connected regions of the line points in this part
+		int[] label = new int[hw * hh];
+		Arrays.fill(label, -1);
+		UnionFind uf = new UnionFind(hw * hh);
+		for (int y = vy0; y < vy1; y++) {
+			for (int x = vx0; x < vx1; x++) {
+				int l = y * hw + x;
+				if (f.candidate[l] == 0 || f.ev[l] < low)
+					continue;
+				label[l] = 0;
+				if (x > vx0 && label[l - 1] >= 0)
+					uf.union(l - 1, l);
+				if (y > vy0)
+					for (int dx = -1; dx <= 1; dx++)
+						if (x + dx >= vx0 && x + dx < vx1
+								&& label[l - hw + dx] >= 0)
+							uf.union(l - hw + dx, l);
+			}
+		}
+
+		/*
+		 * Number the regions. The root of a region is its first pixel, so it
+		 * is numbered before all other pixels of the region.
+		 */
+		List<Boolean> strong = new ArrayList<Boolean>();
+		List<Integer> maxPoint = new ArrayList<Integer>();
+		List<Boolean> open = new ArrayList<Boolean>();
+		for (int y = vy0; y < vy1; y++) {
+			for (int x = vx0; x < vx1; x++) {
+				int l = y * hw + x;
+				if (label[l] < 0)
+					continue;
+				int root = uf.find(l);
+				if (root == l) {
+					label[l] = strong.size();
+					strong.add(false);
+					maxPoint.add(l);
+					open.add(false);
+				} else {
+					label[l] = label[root];
+				}
+				int k = label[l];
+				if (f.ev[l] >= high)
+					strong.set(k, true);
+				if (f.ev[l] > f.ev[maxPoint.get(k)])
+					maxPoint.set(k, l);
+				if ((x == vx0 && vx0 > 0) || (y == vy0 && vy0 > 0)
+						|| (x == vx1 - 1 && vx1 < hw)
+						|| (y == vy1 - 1 && vy1 < hh))
+					open.set(k, true);
+			}
+		}
+		for (int k = 0; k < strong.size(); k++) {
+			if (open.get(k) && !strong.get(k)) {
+				if (seed == null)
+					seed = new byte[hw * hh];
+				seed[maxPoint.get(k)] = 1;
+			}
+		}
+	}
+
+	/*
+	 * The points of the weak regions that have to be seeded for the
+	 * detection of the window, or null
+	 */
+	byte[] getSeed() {
+		return seed;
+	}
+}
@@ -0,0 +1,471 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Detects the lines in an image that is too large for the per-pixel buffers
+ * of a single detection. The image is split into tiles of a fixed size. Each
+ * tile is detected together with a halo of the kernel radius plus the
+ * distance that the width estimation and the line extension look beyond a
+ * line point, so the response within the tile is the same as in the whole
+ * image. A line point is kept only by the tile that contains its pixel, and
+ * the pieces of a line that were cut at a seam are joined again. The
+ * junctions and contour classes are reconstructed and the overlaps are
+ * resolved once for the joined lines, as for the lines of one detection. The
+ * weak regions of line points that may reach beyond a tile are linked as if
+ * they reached a point above the high threshold; a joined line is kept only
+ * if one of its pieces was started at such a point, as every line of the
+ * whole image is. The lines and junctions of the result are
+ * the same as of one detection of the whole image up to small differences
+ * at the seams.
+ * <p>
+ * The tiles are detected in parallel with the same split of the threads as
+ * the frames of a {@link StackDetectionEngine}. The result does not depend on
+ * the number of threads.
+ */
+public class TiledDetectionEngine {
+
+	/**
+	 * Provides the grey values of rectangles of an image. It is called from
+	 * several threads at once. The image itself does not have to fit into
+	 * one array, since only the rectangles of single tiles are requested.
+	 */
+	public interface ImageSource {
+		/**
+		 * @return the grey values of the rectangle with the upper left corner
+		 *         (x,y) and the given size
+		 */
+		PixelData getRegion(int x, int y, int width, int height);
+
+		/**
+		 * @return the width of the image
+		 */
+		int getWidth();
+
+		/**
+		 * @return the height of the image
+		 */
+		int getHeight();
+	}
+
+	/* Provides the response of a tile together with its halo. */
+	private interface TileResponses {
+		ResponseField get(Tile tile);
+	}
+
+	/** Default width and height of the tiles */
+	public static final int DEFAULT_TILE_SIZE = 2048;
+
+	private final int tileSize;
+	private final int parallelism;
+
+	/**
+	 * Creates an engine with tiles of {@link #DEFAULT_TILE_SIZE} that uses all
+	 * available processors.
+	 */
+	public TiledDetectionEngine() {
+		this(DEFAULT_TILE_SIZE, Parallel.getParallelism());
+	}
+
+	/**
+	 * @param tileSize
+	 *            Width and height of the tiles without their halo
+	 * @param parallelism
+	 *            Number of threads that detect the tiles
+	 */
+	public TiledDetectionEngine(int tileSize, int parallelism) {
+		if (tileSize < 1)
+			throw new IllegalArgumentException("Tile size " + tileSize
+					+ " < 1");
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism " + parallelism
+					+ " < 1");
+		this.tileSize = tileSize;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return the width of the halo around each tile for sigma: the radius of
+	 *         the largest Gaussian kernel plus the length over which the line
+	 *         width is searched and lines are extended
+	 */
+	public static int getHalo(double sigma) {
+		return LineDetectionEngine.getKernelRadius(sigma)
+				+ (int) Math.ceil(2.5 * sigma);
+	}
+
+	/**
+	 * Detects the lines in an image that is given as a whole.
+	 *
+	 * @see #detect(ImageSource, byte[], int, DetectionConfig)
+	 */
+	public DetectionResult detect(PixelData pixels, int frame,
+			DetectionConfig config) {
+		return detect(pixels, null, frame, config);
+	}
+
+	/**
+	 * Detects the lines within a mask of an image that is given as a whole.
+	 *
+	 * @see #detect(ImageSource, byte[], int, DetectionConfig)
+	 */
+	public DetectionResult detect(final PixelData pixels, byte[] mask,
+			int frame, DetectionConfig config) {
+		return detect(new ImageSource() {
+
+			@Override
+			public PixelData getRegion(int x, int y, int width, int height) {
+				return pixels.crop(x, y, width, height);
+			}
+
+			@Override
+			public int getWidth() {
+				return pixels.getWidth();
+			}
+
+			@Override
+			public int getHeight() {
+				return pixels.getHeight();
+			}
+		}, mask, frame, config);
+	}
+
+	/**
+	 * Detects the lines in an image tile by tile.
+	 *
+	 * @param source
+	 *            Provides the tiles of the image
+	 * @param mask
+	 *            One value per pixel of the image, row by row; line points
+	 *            are only found at pixels with a value other than 0. If null,
+	 *            the whole image is searched.
+	 * @param frame
+	 *            Slice number that is assigned to the lines and junctions
+	 * @param config
+	 *            Parameters of the detection
+	 * @return the lines and junctions of the whole image. The lines have
+	 *         consecutive IDs; the hysteresis statistics are not available.
+	 * @throws IllegalArgumentException
+	 *             if sigma is out of range for a tile
+	 */
+	public DetectionResult detect(final ImageSource source, final byte[] mask,
+			int frame, final DetectionConfig config) {
+		final int width = source.getWidth();
+		final int height = source.getHeight();
+		if (mask != null && mask.length != (long) width * height)
+			throw new IllegalArgumentException("Mask has " + mask.length
+					+ " values, image has " + width + "x" + height + " pixels");
+		final LineDetectionEngine engine = new LineDetectionEngine();
+		return detect(width, height, new TileResponses() {
+
+			@Override
+			public ResponseField get(Tile tile) {
+				return engine.computeResponse(source.getRegion(tile.hx,
+						tile.hy, tile.hw, tile.hh), tile.cropMask(mask, width),
+						config, CancellationToken.NONE);
+			}
+		}, frame, config);
+	}
+
+	/**
+	 * Detects the lines in the response of a whole frame tile by tile. The
+	 * response is computed only once, e.g., to detect it with several
+	 * thresholds, and the tiles are copied out of it.
+	 *
+	 * @param field
+	 *            The response of the frame
+	 * @param frame
+	 *            Slice number that is assigned to the lines and junctions
+	 * @param config
+	 *            Parameters of the detection
+	 * @return the lines and junctions of the whole frame, as of
+	 *         {@link #detect(ImageSource, byte[], int, DetectionConfig)}
+	 * @throws IllegalArgumentException
+	 *             if the field was computed with another sigma or line mode
+	 */
+	public DetectionResult detect(final LargeResponseField field, int frame,
+			DetectionConfig config) {
+		if (!field.matches(config))
+			throw new IllegalArgumentException("Response of sigma "
+					+ field.getSigma() + " does not match the configuration");
+		return detect(field.getWidth(), field.getHeight(),
+				new TileResponses() {
+
+					@Override
+					public ResponseField get(Tile tile) {
+						return field.getWindow(tile.hx, tile.hy, tile.hw,
+								tile.hh);
+					}
+				}, frame, config);
+	}
+
+	private DetectionResult detect(final int width, final int height,
+			final TileResponses responses, final int frame,
+			final DetectionConfig config) {
+		long start = System.nanoTime();
+		final Tiling tiling = new Tiling(width, height, tileSize,
+				getHalo(config.getSigma()));
+		final Tile[] tiles = tiling.tiles;
+
+		StackDetectionEngine.Schedule schedule = new StackDetectionEngine(
+				parallelism).schedule(tiles.length, Math.min(width, tileSize)
+				+ 2 * tiling.halo, Math.min(height, tileSize) + 2 * tiling.halo);
+		if (config.isVerbose())
+			LinesUtil.LOGGER.info("Image of " + width + "x" + height + " in "
+					+ tiles.length + " tiles, " + schedule);
+
+		// Each lane detects the next tile that is not taken yet
+		final LineDetectionEngine engine = new LineDetectionEngine();
+		final AtomicInteger nextTile = new AtomicInteger(0);
+		final int threadsPerTile = schedule.getThreadsPerFrame();
+		final RecursiveAction[] tasks = new RecursiveAction[schedule
+				.getParallelFrames()];
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					int previous = Parallel.setBandLimit(threadsPerTile);
+					try {
+						int t;
+						while ((t = nextTile.getAndIncrement()) < tiles.length) {
+							Tile tile = tiles[t];
+							ResponseField response = responses.get(tile);
+							TileRegions regions = new TileRegions(response,
+									tile.hx, tile.hy, width, height, config);
+							DetectionResult result = engine.detectLinked(
+									response, regions.getSeed(), frame,
+									config, CancellationToken.NONE);
+							result.translate(tile.hx, tile.hy);
+							tile.result = result;
+						}
+					} finally {
+						Parallel.setBandLimit(previous);
+					}
+				}
+			};
+		}
+		ForkJoinPool pool = new ForkJoinPool(schedule.getParallelism());
+		try {
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					invokeAll(tasks);
+				}
+			});
+		} finally {
+			pool.shutdown();
+		}
+
+		DetectionResult result = engine.reconstruct(
+				new SeamMerge(tiling, frame).merge(), config,
+				CancellationToken.NONE);
+		Lines lines = result.getLines();
+		lines.rebaseIDs(Line.reserveIDs(lines.getNumIDs()));
+		return new DetectionResult(lines, result.getJunctions(),
+				result.getUsedOptions(), null, System.nanoTime() - start);
+	}
+
+	/* The split of an image into tiles. */
+	private static class Tiling implements SeamJoiner.Owner {
+		final int tileSize, halo, cols, rows;
+		final Tile[] tiles;
+
+		Tiling(int width, int height, int tileSize, int halo) {
+			this.tileSize = tileSize;
+			this.halo = halo;
+			cols = (width + tileSize - 1) / tileSize;
+			rows = (height + tileSize - 1) / tileSize;
+			tiles = new Tile[cols * rows];
+			for (int r = 0; r < rows; r++) {
+				for (int c = 0; c < cols; c++) {
+					int x = c * tileSize, y = r * tileSize;
+					int hx = Math.max(0, x - halo), hy = Math.max(0, y - halo);
+					tiles[r * cols + c] = new Tile(x, y, Math.min(width, x
+							+ tileSize) - x, Math.min(height, y + tileSize) - y,
+							hx, hy, Math.min(width, x + tileSize + halo) - hx,
+							Math.min(height, y + tileSize + halo) - hy);
+				}
+			}
+		}
+
+		/*
+		 * The index of the tile that owns the point (x,y), i.e., that contains
+		 * its pixel. Points outside of the image belong to the closest tile.
+		 */
+		@Override
+		public int partOf(float x, float y) {
+			int c = (int) Math.floor((Math.floor(x + 0.5)) / tileSize);
+			int r = (int) Math.floor((Math.floor(y + 0.5)) / tileSize);
+			c = Math.max(0, Math.min(cols - 1, c));
+			r = Math.max(0, Math.min(rows - 1, r));
+			return r * cols + c;
+		}
+	}
+
+	/* A tile with its halo and the result of its detection. */
+	private static class Tile {
+		final int x, y, w, h;
+		final int hx, hy, hw, hh;
+		volatile DetectionResult result;
+
+		Tile(int x, int y, int w, int h, int hx, int hy, int hw, int hh) {
+			this.x = x;
+			this.y = y;
+			this.w = w;
+			this.h = h;
+			this.hx = hx;
+			this.hy = hy;
+			this.hw = hw;
+			this.hh = hh;
+		}
+
+		byte[] cropMask(byte[] mask, int width) {
+			if (mask == null)
+				return null;
+			byte[] crop = new byte[hw * hh];
+			for (int y = 0; y < hh; y++)
+				System.arraycopy(mask, (hy + y) * width + hx, crop, y * hw, hw);
+			return crop;
+		}
+	}
+
+	/*
+	 * Cuts the linked lines of the tiles into the pieces that each tile owns
+	 * and joins the pieces at the seams into the linked lines of the whole
+	 * image.
+	 */
+	private static class SeamMerge {
+		private final Tiling tiling;
+		private final int frame;
+		private final List<SeamJoiner.Piece> pieces = new ArrayList<SeamJoiner.Piece>();
+		private final List<SeamJoiner.CutEnd> cutEnds = new ArrayList<SeamJoiner.CutEnd>();
+		/* The lines of the tiles that are cut already */
+		private final Set<Line> cutLines = Collections
+				.newSetFromMap(new IdentityHashMap<Line, Boolean>());
+
+		SeamMerge(Tiling tiling, int frame) {
+			this.tiling = tiling;
+			this.frame = frame;
+		}
+
+		DetectionResult merge() {
+			Tile[] tiles = tiling.tiles;
+			for (int t = 0; t < tiles.length; t++)
+				for (Line l : tiles[t].result.getLines())
+					// The result may list a line twice; it is cut only once
+					if (cutLines.add(l))
+						SeamJoiner.cut(l, l.row[0] == l.row[l.num - 1]
+								&& l.col[0] == l.col[l.num - 1], t, tiling,
+								pieces, cutEnds);
+			SeamJoiner.join(cutEnds);
+
+			/*
+			 * Build the lines of the chains in the order of their first piece.
+			 * The chains of lines that were only started at seeded points are
+			 * dropped.
+			 */
+			Lines lines = new Lines(frame);
+			for (SeamJoiner.Piece p : pieces) {
+				SeamJoiner.Chain c = p.getChain();
+				if (c.line != null || c.dropped)
+					continue;
+				if (!c.isStrong()) {
+					c.dropped = true;
+					continue;
+				}
+				c.line = new Line(lines.nextID());
+				c.line.setFrame(frame);
+				c.copyTo(c.line);
+				if (!c.closed)
+					// The junctions are found once all lines are joined
+					c.line.setContourClass(LinesUtil.contour_class.cont_no_junc);
+				lines.add(c.line);
+			}
+
+			/*
+			 * Keep the positions of the junctions that each tile owns; the
+			 * junctions are reconstructed from the lines that pass them. A
+			 * junction refers to the line that is closest to it, and is left
+			 * out if no line comes close.
+			 */
+			int num = 0;
+			for (Line l : lines)
+				num += l.num;
+			PointGrid points = new PointGrid(1.0);
+			int[] lineOfPoint = new int[num];
+			int[] indexOfPoint = new int[num];
+			num = 0;
+			for (int i = 0; i < lines.size(); i++) {
+				Line l = lines.get(i);
+				for (int k = 0; k < l.num; k++) {
+					points.add(l.col[k], l.row[k], num);
+					lineOfPoint[num] = i;
+					indexOfPoint[num++] = k;
+				}
+			}
+			Junctions junctions = new Junctions(frame);
+			for (int t = 0; t < tiles.length; t++) {
+				for (Junction j : tiles[t].result.getJunctions()) {
+					if (tiling.partOf(j.x, j.y) != t)
+						continue;
+					int n = points.query(j.x, j.y, 1.0);
+					int nearest = -1;
+					double min = 1.0;
+					for (int c = 0; c < n; c++) {
+						int p = points.getResult()[c];
+						Line l = lines.get(lineOfPoint[p]);
+						double d = SeamJoiner.distance(l.col[indexOfPoint[p]],
+								l.row[indexOfPoint[p]], j.x, j.y);
+						if (d <= min) {
+							min = d;
+							nearest = p;
+						}
+					}
+					if (nearest < 0)
+						continue;
+					Junction junc = new Junction();
+					junc.x = j.x;
+					junc.y = j.y;
+					junc.cont1 = lineOfPoint[nearest];
+					junc.cont2 = junc.cont1;
+					junc.pos = indexOfPoint[nearest];
+					junctions.add(junc);
+				}
+			}
+			return new DetectionResult(lines, junctions,
+					tiles[0].result.getUsedOptions(), null, 0);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+/* A disjoint-set forest over the indices 0..n-1.  Two sets are always joined
+   below the smaller of their roots, so the root of a set is its smallest
+   index and parent[i] <= i holds for every index. */
+public class UnionFind {
+	int[] parent;
+
+	public UnionFind(int n)
+	{
+	  int i;
+
+	  parent = new int[n];
+	  for (i=0; i<n; i++)
+	    parent[i] = i;
+	}
+
+	/* Return the root of the set containing i.  The path is halved on the
+	   way up. */
+	public int find(int i)
+	{
+	  while (parent[i] != i) {
+	    parent[i] = parent[parent[i]];
+	    i = parent[i];
+	  }
+	  return i;
+	}
+
+	/* Join the sets containing i and j and return the root of the joined
+	   set. */
+	public int union(int i, int j)
+	{
+	  i = find(i);
+	  j = find(j);
+	  if (i < j) {
+	    parent[j] = i;
+	    return i;
+	  }
+	  parent[i] = j;
+	  return j;
+	}
+
+	/* Let every index point directly to its root.  Since parent[i] <= i a
+	   single pass in increasing order suffices. */
+	public void flatten()
+	{
+	  int i;
+
+	  for (i=0; i<parent.length; i++)
+	    parent[i] = parent[parent[i]];
+	}
+}
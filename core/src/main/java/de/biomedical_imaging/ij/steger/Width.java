@@ -45,6 +45,23 @@ public class Width {
 
 	/* Maximum contrast allowed (used for outlier check in fix_locations()) */
 	public static final double MAX_CONTRAST = 275.0;
+
+	/* Minimum number of lines per band if the widths are extracted in
+	   parallel. */
+	private static final int MIN_BAND_LINES = 32;
+
+	/* Checked regularly to abort the computation. */
+	private final CancellationToken cancel;
+
+	public Width()
+	{
+	  this(CancellationToken.NONE);
+	}
+
+	public Width(CancellationToken cancel)
+	{
+	  this.cancel = cancel;
+	}
 	
 	
 	/* Modified Bresenham algorithm.  It returns in line all pixels that are
@@ -344,11 +361,43 @@ public class Width {
 	public void compute_line_width(float[] dx, float[] dy, int width, int height, double sigma,int mode,boolean correct_pos, ArrayList<Line> contours,
 	                        MutableInt num_contours)
 	{
-	  float[] grad;
+	  compute_line_width(dx,dy,width,height,sigma,mode,correct_pos,contours,num_contours,
+	                     Parallel.numBands(num_contours.getValue(),MIN_BAND_LINES));
+	}
+
+	/* Same as above, but the lines are split into the given number of bands
+	   whose widths are extracted in parallel.  The width of each line only
+	   depends on the gradient image, so the result does not depend on the
+	   number of bands. */
+	public void compute_line_width(float[] dx, float[] dy, final int width, final int height, final double sigma,final int mode,final boolean correct_pos, final ArrayList<Line> contours,
+	                        MutableInt num_contours, int bands)
+	{
+	  final GradientCache grad;
+	  final BresenhamCache lines;
+
+	  /* The gradient image is only computed near the lines. */
+	  grad = new GradientCache(dx,dy,width,height);
+	  lines = new BresenhamCache(2.5*sigma);
+
+	  Parallel.forEachBand(num_contours.getValue(), bands, new Parallel.BandTask() {
+	    @Override
+	    public void run(int band, int from, int to) {
+	      compute_lines_width(grad,lines,width,height,sigma,mode,correct_pos,contours,from,to);
+	    }
+	  });
+	}
+
+	/* Extract the width of the lines with the indices c_start to c_end-1.  The
+	   buffers for the line points are local to each call, so that several
+	   calls can run concurrently on disjoint sets of lines. */
+	private void compute_lines_width(GradientCache grad, BresenhamCache lines, int width, int height, double sigma,int mode,boolean correct_pos, ArrayList<Line> contours,
+	                                 int c_start, int c_end)
+	{
 	  int    i, j, k;
-	  int    r, c, l;
+	  int    r, c;
+	  int    r_min, r_max, c_min, c_max;
 	  int    x, y, dir;
-	  Offset[]  line;
+	  int[]  line_x, line_y;
 	  int    max_line, num_line=0;
 	  double  length;
 	  Line cont;
@@ -370,7 +419,7 @@ public class Width {
 	  double  px, py;
 	  Position p = new Position();
 	  max_num_points = 0;
-	  for (i=0; i<num_contours.getValue(); i++) {
+	  for (i=c_start; i<c_end; i++) {
 	    num_points = contours.get(i).num;
 	    if (num_points > max_num_points)
 	      max_num_points = num_points;
@@ -386,26 +435,29 @@ public class Width {
 	  contrast = new double[ max_num_points];
 	  asymm = new double[ max_num_points];
 
-	  grad = new float[ (width*height)];
-
 	  length = 2.5*sigma;
 	  max_line =  (int)Math.ceil(length*3);
-	  line = new Offset[ max_line];
-	  for(int o = 0; o < line.length; o++){
-		  line[o] = new Offset();
-	  }
+	  line_x = new int[ max_line];
+	  line_y = new int[ max_line];
 
-	  /* Compute the gradient image. */
-	  for (r=0; r<height; r++) {
-	    for (c=0; c<width; c++) {
-	      l = LinesUtil.LINCOOR(r,c,width);
-	      grad[ l] = (float) Math.sqrt(dx[ l]*dx[ l]+dy[ l]*dy[ l]);
-	    }
-	  }
-
-	  for (i=0; i<num_contours.getValue(); i++) {
+	  for (i=c_start; i<c_end; i++) {
+	    cancel.checkCancelled();
 	    cont = contours.get(i);
 	    num_points = cont.num;
+
+	    /* Compute the gradient in the bounding box of the line, enlarged by
+	       the search line length and the 3x3 facet mask. */
+	    r_min = c_min = Integer.MAX_VALUE;
+	    r_max = c_max = Integer.MIN_VALUE;
+	    for (j=0; j<num_points; j++) {
+	      r =  (int)Math.floor(cont.row[ j]+0.5);
+	      c =  (int)Math.floor(cont.col[ j]+0.5);
+	      r_min = Math.min(r_min,r);
+	      r_max = Math.max(r_max,r);
+	      c_min = Math.min(c_min,c);
+	      c_max = Math.max(c_max,c);
+	    }
+	    grad.precompute(r_min-max_line-1,c_min-max_line-1,r_max+max_line+1,c_max+max_line+1);
 	    
 	    for (j=0; j<num_points; j++) {
 	      px = cont.row[ j];
@@ -417,24 +469,22 @@ public class Width {
 	      nx = Math.cos(cont.angle[ j]);
 	      ny = Math.sin(cont.angle[ j]);
 	      /* Compute the search line. */
-	      MutableInt num_lineh = new MutableInt(num_line);
-	      bresenham(nx,ny,0.0,0.0,length,line,num_lineh);
-	      num_line = num_lineh.intValue();
+	      num_line = lines.bresenham(nx,ny,0.0,0.0,line_x,line_y);
 	      width_r[ j] = width_l[ j] = 0;
 	      /* Look on both sides of the line. */
 	      for (dir=-1; dir<=1; dir+=2) {
 	        for (k=0; k<num_line; k++) {
-	          x = LinesUtil.BR(r+dir*line[ k].x,height);
-	          y = LinesUtil.BC(c+dir*line[ k].y,width);
-	          i1 = grad[ LinesUtil.LINCOOR(LinesUtil.BR(x-1,height),LinesUtil.BC(y-1,width),width)];
-	          i2 = grad[ LinesUtil.LINCOOR(LinesUtil.BR(x-1,height),y,width)];
-	          i3 = grad[ LinesUtil.LINCOOR(LinesUtil.BR(x-1,height),LinesUtil.BC(y+1,width),width)];
-	          i4 = grad[ LinesUtil.LINCOOR(x,LinesUtil.BC(y-1,width),width)];
-	          i5 = grad[ LinesUtil.LINCOOR(x,y,width)];
-	          i6 = grad[ LinesUtil.LINCOOR(x,LinesUtil.BC(y+1,width),width)];
-	          i7 = grad[ LinesUtil.LINCOOR(LinesUtil.BR(x+1,height),LinesUtil.BC(y-1,width),width)];
-	          i8 = grad[ LinesUtil.LINCOOR(LinesUtil.BR(x+1,height),y,width)];
-	          i9 = grad[ LinesUtil.LINCOOR(LinesUtil.BR(x+1,height),LinesUtil.BC(y+1,width),width)];
+	          x = LinesUtil.BR(r+dir*line_x[ k],height);
+	          y = LinesUtil.BC(c+dir*line_y[ k],width);
+	          i1 = grad.get(LinesUtil.BR(x-1,height),LinesUtil.BC(y-1,width));
+	          i2 = grad.get(LinesUtil.BR(x-1,height),y);
+	          i3 = grad.get(LinesUtil.BR(x-1,height),LinesUtil.BC(y+1,width));
+	          i4 = grad.get(x,LinesUtil.BC(y-1,width));
+	          i5 = grad.get(x,y);
+	          i6 = grad.get(x,LinesUtil.BC(y+1,width));
+	          i7 = grad.get(LinesUtil.BR(x+1,height),LinesUtil.BC(y-1,width));
+	          i8 = grad.get(LinesUtil.BR(x+1,height),y);
+	          i9 = grad.get(LinesUtil.BR(x+1,height),LinesUtil.BC(y+1,width));
 	          t1 = i1+i2+i3;
 	          t2 = i4+i5+i6;
 	          t3 = i7+i8+i9;
@@ -465,7 +515,7 @@ public class Width {
 	                /* Project the maximum point position perpendicularly onto the
 	                   search line. */
 	                a = 1;
-	                b = nx*(px-(r+dir*line[ k].x+p1))+ny*(py-(c+dir*line[ k].y+p2));
+	                b = nx*(px-(r+dir*line_x[ k]+p1))+ny*(py-(c+dir*line_y[ k]+p2));
 	                th = new MutableDouble(t);
 		            numh = new MutableInt(num);
 		            p.solve_linear(a,b,th,numh);
@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.junit.Test;
+
+public class BresenhamCacheTest {
+
+	private static final double[] SIGMAS = { 0.7, 1.51, 2.0, 3.3, 5.0, 8.0 };
+	private static final int CASES = 100000;
+
+	/* Components of the axis-aligned and diagonal directions */
+	private static final double[] AXES = { 0.0, -0.0, 1.0, -1.0,
+			Math.sqrt(0.5), -Math.sqrt(0.5) };
+
+	private static void assertSameLine(Width width, BresenhamCache cache,
+			double length, double nx, double ny, double px, double py) {
+		int max_line = (int) Math.ceil(length * 3);
+		Offset[] line = new Offset[max_line];
+		for (int i = 0; i < max_line; i++)
+			line[i] = new Offset();
+		int[] line_x = new int[max_line], line_y = new int[max_line];
+		MutableInt num = new MutableInt();
+		width.bresenham(nx, ny, px, py, length, line, num);
+		String direction = "(" + nx + "," + ny + ") from (" + px + "," + py
+				+ ")";
+		int n = cache.bresenham(nx, ny, px, py, line_x, line_y);
+		assertEquals(direction, num.intValue(), n);
+		for (int i = 0; i < n; i++) {
+			assertEquals(direction, line[i].x, line_x[i]);
+			assertEquals(direction, line[i].y, line_y[i]);
+		}
+	}
+
+	private static void assertSameLines(boolean centered) {
+		Random random = new Random(42);
+		Width width = new Width();
+		for (double sigma : SIGMAS) {
+			double length = 2.5 * sigma;
+			BresenhamCache cache = new BresenhamCache(length);
+			for (int i = 0; i < CASES; i++) {
+				double angle;
+				if (i % 4 == 0)
+					// Multiples of 22.5 degrees and directions just off them
+					angle = random.nextInt(16) * Math.PI / 8
+							+ (random.nextInt(3) - 1) * 1e-12;
+				else
+					angle = random.nextDouble() * 2 * Math.PI;
+				double nx = Math.cos(angle), ny = Math.sin(angle);
+				if (i % 4 == 3) {
+					// Normals that were stored as floats
+					nx = (float) nx;
+					ny = (float) ny;
+				}
+				if (i % 13 == 0) {
+					nx = AXES[random.nextInt(AXES.length)];
+					ny = AXES[random.nextInt(AXES.length)];
+				}
+				double px = 0.0, py = 0.0;
+				if (!centered) {
+					px = i % 7 == 0 ? 0.5 : random.nextDouble() - 0.5;
+					py = i % 11 == 0 ? -0.5 : random.nextDouble() - 0.5;
+				}
+				assertSameLine(width, cache, length, nx, ny, px, py);
+			}
+		}
+	}
+
+	/**
+	 * The cached search lines that start at the center of a pixel are the
+	 * same as those of {@link Width#bresenham}.
+	 */
+	@Test
+	public void testCenteredLines() {
+		assertSameLines(true);
+	}
+
+	/**
+	 * The cached search lines that start anywhere within a pixel are the
+	 * same as those of {@link Width#bresenham}.
+	 */
+	@Test
+	public void testShiftedLines() {
+		assertSameLines(false);
+	}
+}
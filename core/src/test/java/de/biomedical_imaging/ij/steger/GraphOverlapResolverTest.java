@@ -0,0 +1,227 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GraphOverlapResolverTest {
+
+	/**
+	 * @return a line of the given points (x,y), with widths if withWidth
+	 */
+	private static Line line(Lines lines, float[] x, float[] y,
+			boolean withWidth) {
+		Line l = new Line(lines.nextID());
+		l.num = x.length;
+		l.col = x.clone();
+		l.row = y.clone();
+		l.angle = new float[l.num];
+		l.response = new float[l.num];
+		if (withWidth) {
+			l.width_l = new float[l.num];
+			l.width_r = new float[l.num];
+			for (int i = 0; i < l.num; i++) {
+				l.width_l[i] = 1;
+				l.width_r[i] = 2;
+			}
+		}
+		l.setContourClass(LinesUtil.contour_class.cont_no_junc);
+		lines.add(l);
+		return l;
+	}
+
+	/**
+	 * @return a straight line of n points from (x0,y0) to (x1,y1)
+	 */
+	private static Line segment(Lines lines, float x0, float y0, float x1,
+			float y1, int n, boolean withWidth) {
+		float[] x = new float[n], y = new float[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = x0 + (x1 - x0) * i / (n - 1);
+			y[i] = y0 + (y1 - y0) * i / (n - 1);
+		}
+		return line(lines, x, y, withWidth);
+	}
+
+	/**
+	 * @return an arc of a circle around (cx,cy) from angle a0 to a1
+	 */
+	private static Line arc(Lines lines, float cx, float cy, float radius,
+			double a0, double a1, int n) {
+		float[] x = new float[n], y = new float[n];
+		for (int i = 0; i < n; i++) {
+			double a = a0 + (a1 - a0) * i / (n - 1);
+			x[i] = (float) (cx + radius * Math.cos(a));
+			y[i] = (float) (cy + radius * Math.sin(a));
+		}
+		return line(lines, x, y, false);
+	}
+
+	private static void junction(Junctions junctions, Line l1, Line l2,
+			float x, float y) {
+		Junction j = new Junction();
+		j.lineCont1 = l1;
+		j.lineCont2 = l2;
+		j.x = x;
+		j.y = y;
+		junctions.add(j);
+	}
+
+	private static Line find(Lines lines, Line l) {
+		for (Line resolved : lines)
+			if (resolved == l)
+				return resolved;
+		return null;
+	}
+
+	/**
+	 * The arms of a crossing are joined straight through the junction into a
+	 * horizontal and a vertical line.
+	 */
+	@Test
+	public void testStraightThroughJunction() {
+		Lines lines = new Lines(1);
+		Junctions junctions = new Junctions(1);
+		Line left = segment(lines, 40, 50, 50, 50, 11, false);
+		Line up = segment(lines, 50, 40, 50, 50, 11, false);
+		Line right = segment(lines, 50, 50, 60, 50, 11, false);
+		Line down = segment(lines, 50, 50, 50, 60, 11, false);
+		junction(junctions, left, up, 50, 50);
+		junction(junctions, left, right, 50, 50);
+		junction(junctions, left, down, 50, 50);
+
+		Lines resolved = new GraphOverlapResolver().resolve(lines, junctions);
+		assertEquals(2, resolved.size());
+		for (Line l : resolved) {
+			assertEquals(21, l.num);
+			boolean horizontal = l.row[0] == l.row[l.num - 1];
+			for (int i = 0; i < l.num; i++) {
+				if (horizontal)
+					assertTrue(l.row[i] == 50);
+				else
+					assertTrue(l.col[i] == 50);
+			}
+			assertEquals(LinesUtil.contour_class.cont_no_junc,
+					l.getContourClass());
+		}
+	}
+
+	/**
+	 * Two halves of a circle meet at two junctions. They are joined at one
+	 * of them only, since the chain must not close on itself.
+	 */
+	@Test
+	public void testNoSelfClosing() {
+		Lines lines = new Lines(1);
+		Junctions junctions = new Junctions(1);
+		Line upper = arc(lines, 50, 50, 10, 0, Math.PI, 30);
+		Line lower = arc(lines, 50, 50, 10, Math.PI, 2 * Math.PI, 30);
+		upper.col[upper.num - 1] = lower.col[0];
+		upper.row[upper.num - 1] = lower.row[0];
+		lower.col[lower.num - 1] = upper.col[0];
+		lower.row[lower.num - 1] = upper.row[0];
+		junction(junctions, upper, lower, lower.col[0], lower.row[0]);
+		junction(junctions, lower, upper, upper.col[0], upper.row[0]);
+
+		Lines resolved = new GraphOverlapResolver().resolve(lines, junctions);
+		assertEquals(1, resolved.size());
+		Line l = resolved.get(0);
+		assertEquals(59, l.num);
+		assertEquals(LinesUtil.contour_class.cont_both_junc,
+				l.getContourClass());
+	}
+
+	/**
+	 * At a T junction the straight arms are joined and the third arm is kept
+	 * as it is; every segment is used exactly once.
+	 */
+	@Test
+	public void testEachSegmentOnce() {
+		Lines lines = new Lines(1);
+		Junctions junctions = new Junctions(1);
+		Line left = segment(lines, 40, 50, 50, 50, 11, false);
+		Line right = segment(lines, 60, 50, 50, 50, 11, false);
+		Line up = segment(lines, 50, 50, 50, 40, 11, false);
+		junction(junctions, left, right, 50, 50);
+		junction(junctions, left, up, 50, 50);
+		junction(junctions, right, up, 50, 50);
+
+		Lines resolved = new GraphOverlapResolver().resolve(lines, junctions);
+		assertEquals(2, resolved.size());
+		assertNotNull(find(resolved, up));
+		int num = 0;
+		for (Line l : resolved)
+			num += l.num;
+		// The arms share the junction point with the merged line
+		assertEquals(21 + 11, num);
+		for (Line l : resolved) {
+			if (l == up)
+				continue;
+			// The merged line runs through the junction once
+			int atJunction = 0;
+			for (int i = 0; i < l.num; i++)
+				if (l.col[i] == 50 && l.row[i] == 50)
+					atJunction++;
+			assertEquals(1, atJunction);
+			assertEquals(LinesUtil.contour_class.cont_no_junc,
+					l.getContourClass());
+		}
+	}
+
+	/**
+	 * A merged line has widths only if its segments have them, like the lines
+	 * that are not merged. The widths of a reversed segment are swapped.
+	 */
+	@Test
+	public void testWidths() {
+		for (boolean withWidth : new boolean[] { false, true }) {
+			Lines lines = new Lines(1);
+			Junctions junctions = new Junctions(1);
+			Line left = segment(lines, 40, 50, 50, 50, 11, withWidth);
+			Line right = segment(lines, 60, 50, 50, 50, 11, withWidth);
+			junction(junctions, left, right, 50, 50);
+
+			Lines resolved = new GraphOverlapResolver().resolve(lines,
+					junctions);
+			assertEquals(1, resolved.size());
+			Line l = resolved.get(0);
+			assertNull(l.intensity);
+			assertNull(l.asymmetry);
+			if (!withWidth) {
+				assertNull(l.width_l);
+				assertNull(l.width_r);
+				continue;
+			}
+			assertEquals(21, l.width_l.length);
+			for (int i = 0; i < l.num; i++) {
+				boolean reversed = i > 10;
+				assertTrue(l.width_l[i] == (reversed ? 2 : 1));
+				assertTrue(l.width_r[i] == (reversed ? 1 : 2));
+			}
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class LargeResponseFieldTest {
+
+	private static final int WIDTH = 600, HEIGHT = 120;
+
+	/**
+	 * @return the weak line of {@link TiledDetectionEngineTest#weakLine}
+	 *         crossed by a strong vertical line
+	 */
+	private static PixelData image() {
+		float[] pixels = TiledDetectionEngineTest.weakLine(WIDTH, HEIGHT,
+				false, 450);
+		for (int y = 10; y < HEIGHT - 10; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				double across = x - 250.6;
+				pixels[y * WIDTH + x] = Math.max(pixels[y * WIDTH + x],
+						(float) (100 * Math.exp(-across * across
+								/ (2 * 1.5 * 1.5))));
+			}
+		}
+		return PixelData.of(pixels, WIDTH, HEIGHT);
+	}
+
+	private static TiledDetectionEngine.ImageSource source(
+			final PixelData pixels) {
+		return new TiledDetectionEngine.ImageSource() {
+
+			@Override
+			public PixelData getRegion(int x, int y, int width, int height) {
+				return pixels.crop(x, y, width, height);
+			}
+
+			@Override
+			public int getWidth() {
+				return pixels.getWidth();
+			}
+
+			@Override
+			public int getHeight() {
+				return pixels.getHeight();
+			}
+		};
+	}
+
+	private static void assertSameAsHeap(File directory) throws IOException {
+		DetectionConfig config = TiledDetectionEngineTest.CONFIG;
+		PixelData pixels = image();
+		LineDetectionEngine engine = new LineDetectionEngine();
+		LargeResponseField field = LargeResponseField.compute(source(pixels),
+				config, directory, 64);
+		try {
+			ResponseField window = field.getWindow(0, 0, WIDTH, HEIGHT);
+			ResponseField heap = engine.computeResponse(pixels, config,
+					CancellationToken.NONE);
+			assertArrayEquals(heap.ev, window.ev, 0);
+			assertArrayEquals(heap.candidate, window.candidate);
+			assertArrayEquals(heap.px, window.px, 1e-3f);
+
+			DetectionResult expected = engine.detect(heap, 1, config);
+			assertTrue(expected.getNumLines() > 0);
+			TiledDetectionEngineTest.assertSamePoints(expected.getLines(),
+					engine.detect(window, 1, config).getLines());
+			TiledDetectionEngineTest.assertSamePoints(
+					new TiledDetectionEngine(200, 2).detect(pixels, 1, config)
+							.getLines(), new TiledDetectionEngine(200, 2)
+							.detect(field, 1, config).getLines());
+		} finally {
+			field.close();
+		}
+	}
+
+	/**
+	 * The positions of the line points in a window far from the origin of a
+	 * wide frame are as precise as in a small image. A float has a spacing
+	 * of about 0.004 at the coordinates of such a window.
+	 */
+	@Test
+	public void testPositionsFarFromOrigin() throws IOException {
+		final int width = 40000, height = 40, lineX = 39950;
+		DetectionConfig config = TiledDetectionEngineTest.CONFIG;
+		// A vertical line near the right end of the frame
+		TiledDetectionEngine.ImageSource source = new TiledDetectionEngine.ImageSource() {
+
+			@Override
+			public PixelData getRegion(int x, int y, int w, int h) {
+				float[] pixels = new float[w * h];
+				for (int r = 0; r < h; r++)
+					for (int c = 0; c < w; c++) {
+						double across = x + c - lineX - 0.3;
+						pixels[r * w + c] = (float) (100 * Math.exp(-across
+								* across / (2 * 1.5 * 1.5)));
+					}
+				return PixelData.of(pixels, w, h);
+			}
+
+			@Override
+			public int getWidth() {
+				return width;
+			}
+
+			@Override
+			public int getHeight() {
+				return height;
+			}
+		};
+		LargeResponseField field = LargeResponseField.compute(source, config,
+				null);
+		try {
+			int x = lineX - 50, w = 100;
+			int halo = LineDetectionEngine.getKernelRadius(config.getSigma());
+			ResponseField window = field.getWindow(x, 0, w, height);
+			ResponseField heap = new LineDetectionEngine().computeResponse(
+					source.getRegion(x - halo, 0, w + 2 * halo, height),
+					config, CancellationToken.NONE);
+			int candidates = 0;
+			for (int r = 0; r < height; r++) {
+				for (int c = 0; c < w; c++) {
+					int l = r * w + c, h = r * heap.width + c + halo;
+					assertTrue(window.candidate[l] == heap.candidate[h]);
+					if (window.candidate[l] == 0)
+						continue;
+					candidates++;
+					assertTrue(Math.abs(window.px[l] - heap.px[h]) < 1e-4);
+					assertTrue(Math.abs(window.py[l] - (heap.py[h] - halo)) < 1e-4);
+					double y = x + (double) heap.py[h] - halo;
+					assertTrue(Math.abs(field.getPositionY(field.index(x + c,
+							r)) - y) < 1e-4);
+				}
+			}
+			assertTrue(candidates >= height);
+		} finally {
+			field.close();
+		}
+	}
+
+	/**
+	 * The field in direct buffers gives the same lines as the response on
+	 * the heap.
+	 */
+	@Test
+	public void testDirectField() throws IOException {
+		assertSameAsHeap(null);
+	}
+
+	/**
+	 * The field in a mapped file gives the same lines as the response on the
+	 * heap.
+	 */
+	@Test
+	public void testMappedField() throws IOException {
+		assertSameAsHeap(new File(System.getProperty("java.io.tmpdir")));
+	}
+}
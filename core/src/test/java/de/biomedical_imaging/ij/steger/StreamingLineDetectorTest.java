@@ -0,0 +1,105 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StreamingLineDetectorTest {
+
+	private static List<Line> stream(float[] pixels, int width, int height,
+			DetectionConfig config) {
+		StreamingLineDetector detector = new StreamingLineDetector(width, 1,
+				config);
+		List<Line> lines = new ArrayList<Line>();
+		for (int y = 0; y < height; y++) {
+			detector.addRow(Arrays.copyOfRange(pixels, y * width, (y + 1)
+					* width));
+			lines.addAll(detector.pollLines());
+		}
+		detector.finish();
+		lines.addAll(detector.pollLines());
+		return lines;
+	}
+
+	private static void assertSameAsWholeImage(float[] pixels, int width,
+			int height, DetectionConfig config) {
+		DetectionResult whole = new LineDetectionEngine().detect(pixels,
+				width, height, 1, config);
+		TiledDetectionEngineTest.assertSamePoints(whole.getLines(),
+				stream(pixels, width, height, config));
+	}
+
+	/**
+	 * The part of the line in the first blocks is weak, and its strong part
+	 * arrives several blocks later. It is kept as a whole, like in the
+	 * detection of the whole image.
+	 */
+	@Test
+	public void testWeakLineAcrossBlocks() {
+		float[] pixels = TiledDetectionEngineTest.weakLine(120, 600, true, 450);
+		DetectionConfig config = TiledDetectionEngineTest.CONFIG;
+		assertSameAsWholeImage(pixels, 120, 600, config);
+		assertSameAsWholeImage(pixels, 120, 600, config
+				.withCorrectPosition(true).withEstimateWidth(true));
+	}
+
+	/**
+	 * A weak branch that only meets a strong line at a junction is not
+	 * linked in the whole image. The blocks above the line link it from
+	 * seeds; it is dropped nevertheless. The strong line may still be split
+	 * at the junction, since each block is post-processed on its own.
+	 */
+	@Test
+	public void testWeakBranchAcrossBlocks() {
+		float[] pixels = TiledDetectionEngineTest.weakBranch(600, 400, 300,
+				300, 100);
+		DetectionConfig config = TiledDetectionEngineTest.CONFIG;
+		assertBranchDropped(stream(pixels, 600, 400, config));
+		assertBranchDropped(stream(pixels, 600, 400, config
+				.withCorrectPosition(true).withEstimateWidth(true)));
+	}
+
+	private static void assertBranchDropped(List<Line> lines) {
+		assertFalse(lines.isEmpty());
+		for (Line l : lines)
+			for (float y : l.getYCoordinates())
+				assertTrue("Point in row " + y, y > 295);
+	}
+
+	/**
+	 * A line that is weak in all blocks is dropped.
+	 */
+	@Test
+	public void testWeakLineIsDropped() {
+		float[] pixels = TiledDetectionEngineTest.weakLine(120, 600, true, 600);
+		assertEquals(0, stream(pixels, 120, 600,
+				TiledDetectionEngineTest.CONFIG).size());
+	}
+}
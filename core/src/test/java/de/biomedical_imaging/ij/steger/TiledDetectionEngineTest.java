@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TiledDetectionEngineTest {
+
+	static final DetectionConfig CONFIG = new DetectionConfig(1.5, 8, 4)
+			.withExtendLine(true);
+
+	/**
+	 * @return an image with a bright line along its middle, in x or y
+	 *         direction. The response of the line is between the thresholds
+	 *         of {@link #CONFIG} up to the position strongFrom, and above the
+	 *         high threshold from there on.
+	 */
+	static float[] weakLine(int width, int height, boolean vertical,
+			int strongFrom) {
+		float[] pixels = new float[width * height];
+		int length = vertical ? height : width;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int along = vertical ? y : x;
+				double across = vertical ? x - width / 2.0 - 0.3 : y - height
+						/ 2.0 - 0.3;
+				if (along < 10 || along >= length - 10)
+					continue;
+				double contrast = along >= strongFrom ? 100 : 30;
+				pixels[y * width + x] = (float) (contrast * Math.exp(-across
+						* across / (2 * 1.5 * 1.5)));
+			}
+		}
+		return pixels;
+	}
+
+	/**
+	 * @return an image with a strong line in x direction at the row y and a
+	 *         branch in y direction at the column x from the row branchStart
+	 *         down to the line. The response of the branch is between the
+	 *         thresholds of {@link #CONFIG}.
+	 */
+	static float[] weakBranch(int width, int height, int y, int x,
+			int branchStart) {
+		float[] pixels = new float[width * height];
+		for (int r = 0; r < height; r++) {
+			for (int c = 0; c < width; c++) {
+				double value = 0;
+				if (c >= 10 && c < width - 10) {
+					double across = r - y - 0.3;
+					value = 100 * Math.exp(-across * across / (2 * 1.5 * 1.5));
+				}
+				if (r >= branchStart && r <= y) {
+					double across = c - x - 0.3;
+					value = Math.max(value, 40 * Math.exp(-across * across
+							/ (2 * 1.5 * 1.5)));
+				}
+				pixels[r * width + c] = (float) value;
+			}
+		}
+		return pixels;
+	}
+
+	/**
+	 * Asserts that the lines have the same points, regardless of how they
+	 * are split into lines.
+	 */
+	static void assertSamePoints(List<Line> expected, List<Line> actual) {
+		assertEquals(numPoints(expected), numPoints(actual));
+		assertCovered(expected, actual);
+		assertCovered(actual, expected);
+	}
+
+	private static int numPoints(List<Line> lines) {
+		int num = 0;
+		for (Line l : lines)
+			num += l.getNumber();
+		return num;
+	}
+
+	private static void assertCovered(List<Line> lines, List<Line> by) {
+		PointGrid grid = new PointGrid(1.0);
+		List<float[]> points = new ArrayList<float[]>();
+		for (Line l : by) {
+			for (int i = 0; i < l.getNumber(); i++) {
+				float x = l.getXCoordinates()[i], y = l.getYCoordinates()[i];
+				grid.add(x, y, points.size());
+				points.add(new float[] { x, y });
+			}
+		}
+		for (Line l : lines) {
+			for (int i = 0; i < l.getNumber(); i++) {
+				float x = l.getXCoordinates()[i], y = l.getYCoordinates()[i];
+				boolean found = false;
+				int n = grid.query(x, y, 1e-3);
+				for (int k = 0; k < n; k++) {
+					float[] p = points.get(grid.getResult()[k]);
+					found |= Math.abs(p[0] - x) < 1e-3 && Math.abs(p[1] - y) < 1e-3;
+				}
+				assertTrue("Point " + x + "," + y + " is missing", found);
+			}
+		}
+	}
+
+	private static void assertSameAsWholeImage(float[] pixels, int width,
+			int height, DetectionConfig config) {
+		DetectionResult whole = new LineDetectionEngine().detect(pixels,
+				width, height, 1, config);
+		DetectionResult tiled = new TiledDetectionEngine(200, 2).detect(
+				PixelData.of(pixels, width, height), 1, config);
+		assertSamePoints(whole.getLines(), tiled.getLines());
+	}
+
+	/**
+	 * The part of the line in the first two tiles is weak, and its strong
+	 * part is more than a halo away from them. It is kept as a whole, like
+	 * in the detection of the whole image.
+	 */
+	@Test
+	public void testWeakLineAcrossSeams() {
+		float[] pixels = weakLine(600, 120, false, 450);
+		assertSameAsWholeImage(pixels, 600, 120, CONFIG);
+		assertSameAsWholeImage(pixels, 600, 120, CONFIG
+				.withCorrectPosition(true).withEstimateWidth(true));
+	}
+
+	/**
+	 * A weak branch that only meets a strong line at a junction is not
+	 * linked in the whole image, since no line starts on it. It crosses a
+	 * seam, so both tiles link their parts of it from seeds; it is dropped
+	 * nevertheless.
+	 */
+	@Test
+	public void testWeakBranchAcrossSeam() {
+		float[] pixels = weakBranch(600, 400, 300, 300, 100);
+		assertSameAsWholeImage(pixels, 600, 400, CONFIG);
+		assertSameAsWholeImage(pixels, 600, 400, CONFIG
+				.withCorrectPosition(true).withEstimateWidth(true));
+	}
+
+	/**
+	 * A line that is weak in all tiles is dropped.
+	 */
+	@Test
+	public void testWeakLineIsDropped() {
+		float[] pixels = weakLine(600, 120, false, 600);
+		assertEquals(0, new TiledDetectionEngine(200, 2).detect(
+				PixelData.of(pixels, 600, 120), 1, CONFIG).getNumLines());
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.awt.Rectangle;
+
+import ij.process.ImageProcessor;
+
+/**
+ * The part of an image in which {@link LineDetector} searches for lines: the
+ * bounding box of the region of interest or of a mask, grown by the halo of
+ * the Gaussian kernels, so that the convolution sees the same neighbourhood
+ * as in the whole image. Line points are only searched within the region of
+ * interest or mask itself.
+ */
+final class DetectionArea {
+	/* The processed rectangle of the image */
+	final Rectangle bounds;
+	/*
+	 * One value per pixel of bounds, row by row, 0 for the pixels outside of
+	 * the region of interest; null if line points are searched everywhere
+	 */
+	final byte[] mask;
+
+	private DetectionArea(Rectangle bounds, byte[] mask) {
+		this.bounds = bounds;
+		this.mask = mask;
+	}
+
+	/**
+	 * @param ip
+	 *            The image; its region of interest is used if mask is null
+	 * @param mask
+	 *            A mask of the size of the image, the pixels with a value
+	 *            other than 0 belong to it; may be null
+	 * @param region
+	 *            If not null, only this rectangle of the image is processed
+	 * @param halo
+	 *            The radius of the largest kernel
+	 * @return the area that is processed; its bounds are empty if the region
+	 *         of interest or the mask lies outside of the region
+	 * @throws IllegalArgumentException
+	 *             if the mask has another size than the image
+	 */
+	static DetectionArea of(ImageProcessor ip, ImageProcessor mask,
+			Rectangle region, int halo) {
+		int width = ip.getWidth();
+		int height = ip.getHeight();
+		Rectangle image = new Rectangle(0, 0, width, height);
+		Rectangle roi;
+		byte[] roiMask = null;
+		if (mask != null) {
+			if (mask.getWidth() != width || mask.getHeight() != height)
+				throw new IllegalArgumentException("Mask of size "
+						+ mask.getWidth() + "x" + mask.getHeight()
+						+ " does not fit the image of size " + width + "x"
+						+ height);
+			roi = getBoundingBox(mask);
+		} else {
+			roi = ip.getRoi();
+			roiMask = ip.getMaskArray();
+			if (roiMask == null && roi.equals(image)) {
+				// No region of interest: search the whole image
+				Rectangle bounds = region == null ? image : region
+						.intersection(image);
+				return new DetectionArea(bounds, null);
+			}
+		}
+
+		Rectangle bounds = new Rectangle(roi);
+		bounds.grow(halo, halo);
+		bounds = bounds.intersection(image);
+		if (region != null)
+			bounds = bounds.intersection(region);
+		if (bounds.isEmpty())
+			return new DetectionArea(new Rectangle(), null);
+
+		byte[] inside = new byte[bounds.width * bounds.height];
+		for (int y = Math.max(bounds.y, roi.y); y < Math.min(bounds.y
+				+ bounds.height, roi.y + roi.height); y++) {
+			for (int x = Math.max(bounds.x, roi.x); x < Math.min(bounds.x
+					+ bounds.width, roi.x + roi.width); x++) {
+				boolean in;
+				if (mask != null)
+					in = mask.getf(x, y) != 0;
+				else
+					in = roiMask == null
+							|| roiMask[(y - roi.y) * roi.width + x - roi.x] != 0;
+				if (in)
+					inside[(y - bounds.y) * bounds.width + x - bounds.x] = 1;
+			}
+		}
+		return new DetectionArea(bounds, inside);
+	}
+
+	/* The smallest rectangle that contains all pixels of the mask other than 0 */
+	private static Rectangle getBoundingBox(ImageProcessor mask) {
+		int x0 = mask.getWidth(), y0 = mask.getHeight(), x1 = -1, y1 = -1;
+		for (int y = 0; y < mask.getHeight(); y++) {
+			for (int x = 0; x < mask.getWidth(); x++) {
+				if (mask.getf(x, y) != 0) {
+					x0 = Math.min(x0, x);
+					x1 = Math.max(x1, x);
+					y0 = Math.min(y0, y);
+					y1 = Math.max(y1, y);
+				}
+			}
+		}
+		if (x1 < 0)
+			return new Rectangle();
+		return new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+	}
+
+	/**
+	 * @return the mask downsampled like {@link PixelData#downsample}; a pixel
+	 *         of the result belongs to the mask if any pixel of its block
+	 *         does. Null if there is no mask.
+	 */
+	byte[] getMask(int factor) {
+		if (mask == null || factor == 1)
+			return mask;
+		int w = (bounds.width + factor - 1) / factor;
+		byte[] out = new byte[w * ((bounds.height + factor - 1) / factor)];
+		for (int y = 0; y < bounds.height; y++)
+			for (int x = 0; x < bounds.width; x++)
+				if (mask[y * bounds.width + x] != 0)
+					out[(y / factor) * w + x / factor] = 1;
+		return out;
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.awt.Rectangle;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import ij.IJ;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * Detects lines in an {@link ImageProcessor}. This class keeps the result of
+ * the last detection, so an instance must not be shared between threads; use
+ * {@link LineDetectionEngine} directly for concurrent detections.
+ */
+public class LineDetector {
+	boolean bechatty = false;
+	/* If set, the response of the line detector is taken from this cache */
+	PreviewCache cache = null;
+	/* Aborts the detection once it is cancelled */
+	CancellationToken cancel = CancellationToken.NONE;
+	/* If set, only this rectangle of the image is processed */
+	Rectangle region = null;
+	/* If larger than 1, the image is downsampled by this factor before the detection */
+	int downsampling = 1;
+	private ImageProcessor mask = null;
+	private int tileSize = 0;
+	private DetectionResult result;
+
+	// Show the verbose output of the detection in the ImageJ log window
+	static {
+		LinesUtil.LOGGER.setUseParentHandlers(false);
+		LinesUtil.LOGGER.addHandler(new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				IJ.log(record.getMessage());
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+	}
+
+	/**
+	 * 
+	 * @param ip
+	 *            The image where the lines should be detected
+	 * @param sigma
+	 *            A value which depends on the line width: sigma >=
+	 *            width/(2*sqrt(3))
+	 * @param upperThresh
+	 *            Upper hysteresis thresholds used in the linking algorithm
+	 *            (Depends on the maximum contour brightness (greyvalue))
+	 * @param lowerThresh
+	 *            Lower hysteresis thresholds used in the linking algorithm
+	 *            (Depends on the minimum contour brightness (greyvalue)).
+	 * @param isDarkLine
+	 *            True if the line darker than the background
+	 * @param doCorrectPosition
+	 *            Determines whether the line width and position correction
+	 *            should be applied
+	 * @param doEstimateWidth
+	 *            Determines whether the line width should be extracted
+	 * @param doExtendLine
+	 *            Extends the detect lines to find more junction points
+	 * @return An arraylist with line objects
+	 */
+	public Lines detectLines(ImageProcessor ip, double sigma,
+			double upperThresh, double lowerThresh, boolean isDarkLine,
+			boolean doCorrectPosition, boolean doEstimateWidth,
+			boolean doExtendLine) {
+		return detectLines(ip, sigma, upperThresh, lowerThresh, isDarkLine,
+			doCorrectPosition, doEstimateWidth, doExtendLine, OverlapOption.NONE);
+	}
+
+	public Lines detectLines(ImageProcessor ip, double sigma,
+		double upperThresh, double lowerThresh, boolean isDarkLine,
+		boolean doCorrectPosition, boolean doEstimateWidth,
+		boolean doExtendLine, OverlapOption overlapOption) {
+		DetectionConfig config = new DetectionConfig(sigma, upperThresh,
+				lowerThresh, isDarkLine, doCorrectPosition, doEstimateWidth,
+				doExtendLine, overlapOption, bechatty);
+		try {
+			LineDetectionEngine engine = new LineDetectionEngine();
+			// Only the bounding box of the ROI or mask and the halo of the
+			// kernels around it is convolved
+			DetectionArea area = DetectionArea.of(ip, mask, region,
+					LineDetectionEngine.getKernelRadius(sigma));
+			if (area.bounds.isEmpty()) {
+				result = emptyResult(ip);
+				return result.getLines();
+			}
+			// The lines in the downsampled image have the same contrast but
+			// are narrower, so sigma and the thresholds are scaled with it
+			DetectionConfig scaled = config.scaled(1.0 / downsampling);
+			byte[] areaMask = area.getMask(downsampling);
+			if (tileSize > 0)
+				result = new TiledDetectionEngine(tileSize,
+						Parallel.getParallelism()).detect(toPixelData(ip,
+						area.bounds).downsample(downsampling), areaMask, ip
+						.getSliceNumber(), scaled);
+			else if (cache != null)
+				result = engine.detect(cache.get(ip, area.bounds, areaMask,
+						downsampling, scaled, cancel), ip.getSliceNumber(),
+						scaled, cancel);
+			else
+				result = engine.detect(toPixelData(ip, area.bounds)
+						.downsample(downsampling), areaMask, ip
+						.getSliceNumber(), scaled, cancel);
+			if (downsampling > 1)
+				result.upsample(downsampling);
+			result.translate(area.bounds.x, area.bounds.y);
+		} catch (IllegalArgumentException e) {
+			IJ.error(e.getMessage());
+			result = emptyResult(ip);
+		}
+		return result.getLines();
+	}
+
+	private static DetectionResult emptyResult(ImageProcessor ip) {
+		return new DetectionResult(new Lines(ip.getSliceNumber()),
+				new Junctions(ip.getSliceNumber()), null, null, 0);
+	}
+
+	/**
+	 * Restricts the detection to a mask. Line points are only searched
+	 * within the mask, and only its bounding box plus the halo of the
+	 * Gaussian kernels is processed.
+	 * 
+	 * @param mask
+	 *            A mask of the size of the image; the pixels with a value
+	 *            other than 0 belong to it. If null (the default), the region
+	 *            of interest of the image is used.
+	 */
+	public void setMask(ImageProcessor mask) {
+		this.mask = mask;
+	}
+
+	/**
+	 * Detects the lines tile by tile with a {@link TiledDetectionEngine}, so
+	 * that the per-pixel buffers of the detection are only needed for one
+	 * tile per thread.
+	 * 
+	 * @param tileSize
+	 *            Width and height of the tiles, or 0 (the default) to detect
+	 *            the image as a whole
+	 */
+	public void setTileSize(int tileSize) {
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * @return the grey values of the image. The pixel arrays of 8-bit, 16-bit
+	 *         and 32-bit images are only read, so they are used without a
+	 *         copy.
+	 */
+	static PixelData toPixelData(ImageProcessor ip) {
+		int width = ip.getWidth();
+		int height = ip.getHeight();
+		if (ip instanceof ByteProcessor)
+			return PixelData.of((byte[]) ip.getPixels(), width, height);
+		if (ip instanceof ShortProcessor)
+			return PixelData.of((short[]) ip.getPixels(), width, height);
+		if (ip instanceof FloatProcessor)
+			return PixelData.of((float[]) ip.getPixels(), width, height);
+		float[] pixels = new float[width * height];
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				pixels[y * width + x] = ip.getf(x, y);
+		return PixelData.of(pixels, width, height);
+	}
+
+	/**
+	 * @return the grey values of the rectangle of the image, or of the whole
+	 *         image if the rectangle is null
+	 */
+	static PixelData toPixelData(ImageProcessor ip, Rectangle region) {
+		PixelData pixels = toPixelData(ip);
+		if (region == null)
+			return pixels;
+		return pixels.crop(region.x, region.y, region.width, region.height);
+	}
+
+	public Options getUsedParamters() {
+		return result == null ? null : result.getUsedOptions();
+	}
+
+	public Junctions getJunctions() {
+		return result == null ? null : result.getJunctions();
+	}
+
+	/**
+	 * @return The regions of candidate line points of the last detection,
+	 *         i.e., the number of regions and how many of them were linked
+	 */
+	public Hysteresis getHysteresis() {
+		return result == null ? null : result.getHysteresis();
+	}
+
+	/**
+	 * @return The complete result of the last detection
+	 */
+	public DetectionResult getResult() {
+		return result;
+	}
+}
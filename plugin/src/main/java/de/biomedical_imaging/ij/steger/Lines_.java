@@ -25,16 +25,28 @@ package de.biomedical_imaging.ij.steger;
 import java.awt.AWTEvent;
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.Rectangle;
 import java.awt.TextField;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import ij.IJ;
 import ij.ImagePlus;
+import ij.ImageStack;
 import ij.Prefs;
 import ij.gui.DialogListener;
 import ij.gui.GenericDialog;
+import ij.gui.ImageCanvas;
+import ij.gui.ImageWindow;
 import ij.gui.Overlay;
 import ij.gui.PointRoi;
 import ij.gui.PolygonRoi;
@@ -49,6 +61,9 @@ import ij.process.ImageProcessor;
 
 
 public class Lines_ implements ExtendedPlugInFilter, DialogListener {
+	/* Larger images are detected tile by tile (about 3 GB of buffers for
+	   the whole image) */
+	final static long TILED_DETECTION_PIXELS = 1L << 26;
 	final static double lineWidthDefault = 3.5;
 	double lineWidth = lineWidthDefault;
 	
@@ -90,6 +105,9 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 	
 	OverlapOption overlapOption = OverlapOption.NONE;
 	
+	final static PreviewMode previewModeDefault = PreviewMode.WHOLE_IMAGE;
+	PreviewMode previewMode = previewModeDefault;
+	
 	final static boolean showIDsDefault = false;
 	boolean showIDs = showIDsDefault;
 	
@@ -101,6 +119,18 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 	boolean doStack = false;
 	
 	private Options usedOptions = null;
+	private final PreviewCache previewCache = new PreviewCache();
+	
+	/* The preview is computed on this thread, so that the dialog stays responsive */
+	private ExecutorService previewExecutor = null;
+	/* Token of the preview that is currently computed, or null */
+	private CancellationToken previewToken = null;
+	/* Canvas whose visible region is previewed, and the region of the last preview */
+	private ImageCanvas previewCanvas = null;
+	/* Window that scrolls the canvas with the mouse wheel while the visible region is previewed */
+	private ImageWindow previewWindow = null;
+	private Rectangle previewRegion = null;
+	private final ViewportListener viewportListener = new ViewportListener();
 	private static Lines_ instance = null;
 	
 	/** For each frame an ArrayList with the lines of a single frame **/// 
@@ -129,7 +159,7 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 	@Override
 	public int setup(String arg, ImagePlus imp) {
 		if (arg.equals("final")) {
-			sortLists();
+			previewCache.clear();
 			//assignLinesToJunctions();
 			displayContours();
 			if(displayResults){
@@ -171,36 +201,9 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 		result = new ArrayList<Lines>();
 		resultJunction = new ArrayList<Junctions>();
 		readSettings();
-		return DOES_8G + DOES_STACKS + FINAL_PROCESSING + PARALLELIZE_STACKS;
+		return DOES_8G + DOES_16 + DOES_32 + DOES_STACKS + FINAL_PROCESSING;
 	}
 	
-	private void sortLists(){
-		
-		Collections.sort(result, new Comparator<Lines>() {
-
-			@Override
-			public int compare(Lines o1, Lines o2) {
-				// TODO Auto-generated method stub
-				if(o1.getFrame()<o2.getFrame())
-					return -1;
-				if(o1.getFrame()>o2.getFrame())
-					return 1;
-				return 0;
-			}
-		});
-		Collections.sort(resultJunction,new Comparator<Junctions>() {
-
-			@Override
-			public int compare(Junctions o1, Junctions o2) {
-				if(o1.getFrame()<o2.getFrame())
-					return -1;
-				if(o1.getFrame()>o2.getFrame())
-					return 1;
-				return 0;
-			}
-		});
-	}
-
 	@Override
 	public int showDialog(ImagePlus imp, String command, PlugInFilterRunner pfr) {
 		
@@ -229,12 +232,24 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 		}
 
 		gd.addChoice("Method_for_overlap_resolution", overlap, overlapOption.name());
+		
+		final String[] previewModes = new String[PreviewMode.values().length];
+		for (int i=0; i<previewModes.length; i++) {
+			previewModes[i] = PreviewMode.values()[i].name();
+		}
+		gd.addChoice("Preview_mode", previewModes, previewMode.name());
 				
 		gd.addHelp("http://fiji.sc/Ridge_Detection");
 		gd.addDialogListener(this);
 		gd.addPreviewCheckbox(pfr);
 		gd.addButton("Reset settings to default", new ResetToDefaultListener(gd));
+		previewCanvas = imp.getCanvas();
+		if (previewCanvas != null) {
+			previewCanvas.addMouseListener(viewportListener);
+			previewCanvas.addKeyListener(viewportListener.keys);
+		}
 		gd.showDialog();
+		stopPreview();
 		if (gd.wasCanceled()) {
 			imp.setOverlay(null);
 			return DONE;
@@ -257,19 +272,32 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 		displayResults = gd.getNextBoolean();
 		addToRoiManager = gd.getNextBoolean();
 		overlapOption = OverlapOption.valueOf(gd.getNextChoice());
+		previewMode = PreviewMode.valueOf(gd.getNextChoice());
 		saveSettings();
 		
 		result = new ArrayList<Lines>();
 		resultJunction = new ArrayList<Junctions>();
 		
-		int labels =  IJ.setupDialog(imp, DOES_8G + FINAL_PROCESSING
-				+ PARALLELIZE_STACKS);
-		doStack = (labels!=DOES_8G + FINAL_PROCESSING
-				+ PARALLELIZE_STACKS);
+		int labels =  IJ.setupDialog(imp, DOES_8G + DOES_16 + DOES_32
+				+ FINAL_PROCESSING);
+		doStack = (labels & DOES_STACKS) != 0;
 		
-		return labels;
+		// The whole stack is detected in a single call of run()
+		return labels & ~DOES_STACKS;
 	}
 	
+	/*
+	 * The grey value of the background of dark lines is estimated by the
+	 * maximum grey value. For 8-bit images this is the maximum of the type,
+	 * 16-bit and 32-bit images rarely use their full range.
+	 */
+	private double getMaxGreyValue(){
+		if (imp.getBitDepth() == 8) {
+			return 255;
+		}
+		return imp.getProcessor().getStatistics().max;
+	}
+
 	private void readSettings(){
 		lineWidth = Prefs.get("RidgeDetection.lineWidth", lineWidthDefault);
 		contrastHigh = Prefs.get("RidgeDetection.contrastHigh", contrastHighDefault);
@@ -288,6 +316,7 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 		addToRoiManager = Prefs.get("RidgeDetection.addToRoiManager", addToRoiManagerDefault);
 		String overlapOptionString = Prefs.get("RidgeDetection.overlapOption", OverlapOption.NONE.name());
 		overlapOption = OverlapOption.valueOf(overlapOptionString);
+		previewMode = PreviewMode.valueOf(Prefs.get("RidgeDetection.previewMode", previewModeDefault.name()));
 	}
 	
 	private void saveSettings(){
@@ -307,6 +336,7 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 		Prefs.set("RidgeDetection.displayResults", displayResults);
 		Prefs.set("RidgeDetection.addToRoiManager", addToRoiManager);
 		Prefs.set("RidgeDetection.overlapOption", overlapOption.name());
+		Prefs.set("RidgeDetection.previewMode", previewMode.name());
 	}
 	
 	public void addToRoiManager(){
@@ -536,6 +566,8 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 
 	@Override
 	public boolean dialogItemChanged(GenericDialog gd, AWTEvent e) {
+		// The running preview is outdated and must not be drawn anymore
+		cancelPreview();
 		imp.setOverlay(null);
 		boolean lwChanged = false;
 		boolean contHighChanged = false;
@@ -579,6 +611,7 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 		displayResults = gd.getNextBoolean();
 		addToRoiManager = gd.getNextBoolean();
 		overlapOption = OverlapOption.valueOf(gd.getNextChoice());
+		previewMode = PreviewMode.valueOf(gd.getNextChoice());
 		if(lwChanged || contHighChanged || contLowChanged){
 			contrastOrLineWidthChangedOnce=true;
 		}
@@ -590,7 +623,7 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 			textSigma.setEditable(true);
 			double clow = contrastLow;
 			if(isDarkLine){
-				clow = 255 - contrastHigh;
+				clow = getMaxGreyValue() - contrastHigh;
 			}
 			double estimatedLowerThresh = Math.floor(Math.abs(-2
 					* clow
@@ -603,7 +636,7 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 			textLowThresh.setEditable(true);
 			double chigh = contrastHigh;
 			if(isDarkLine){
-				chigh = 255 - contrastLow;
+				chigh = getMaxGreyValue() - contrastLow;
 			}
 			double estimatedUpperThresh = Math.floor(Math.abs(-2
 					* chigh
@@ -636,24 +669,212 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 	public void run(ImageProcessor ip) {
 		
 		if (isPreview) {
-			Line.resetCounter();
-			result = new ArrayList<Lines>();
-			resultJunction = new ArrayList<Junctions>();
+			startPreview(ip);
+			return;
+		}
 
+		if (doStack) {
+			detectStack(ip);
+			return;
 		}
 
 		LineDetector detect = new LineDetector();
 		detect.bechatty = verbose;
+		if ((long) ip.getWidth() * ip.getHeight() > TILED_DETECTION_PIXELS) {
+			// The buffers of the detection would not fit the whole image
+			detect.setTileSize(TiledDetectionEngine.DEFAULT_TILE_SIZE);
+		} else {
+			// Threshold changes in the preview reuse the response of the detector
+			detect.cache = previewCache;
+		}
 
 		result.add(detect.detectLines(ip, sigma, upperThresh, lowerThresh, isDarkLine, doCorrectPosition, doEstimateWidth, doExtendLine, overlapOption));
 		usedOptions = detect.getUsedParamters();
 		resultJunction.add(detect.getJunctions());
-
-		if (isPreview) {
-			displayContours();
-			Line.resetCounter();
-			result = new ArrayList<Lines>();
-			resultJunction = new ArrayList<Junctions>();
+	}
+	
+	/*
+	 * Computes the preview in the background. Each change of the parameters
+	 * cancels the preview that is still computed, and only the latest
+	 * preview is drawn.
+	 */
+	private synchronized void startPreview(final ImageProcessor ip) {
+		cancelPreview();
+		final CancellationToken token = new CancellationToken();
+		previewToken = token;
+		if (previewExecutor == null) {
+			previewExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Ridge Detection Preview");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		
+		final LineDetector detect = new LineDetector();
+		detect.bechatty = verbose;
+		detect.cache = previewCache;
+		detect.cancel = token;
+		updateWheelListener();
+		previewRegion = getPreviewRegion();
+		detect.region = previewRegion;
+		detect.downsampling = getPreviewDownsampling();
+		final double sigma = this.sigma, upperThresh = this.upperThresh, lowerThresh = this.lowerThresh;
+		final boolean isDarkLine = this.isDarkLine, doCorrectPosition = this.doCorrectPosition, 
+				doEstimateWidth = this.doEstimateWidth, doExtendLine = this.doExtendLine;
+		final OverlapOption overlapOption = this.overlapOption;
+		previewExecutor.submit(new Runnable() {
+			
+			@Override
+			public void run() {
+				if (token.isCancelled()) {
+					return;
+				}
+				Line.resetCounter();
+				Lines lines;
+				try {
+					lines = detect.detectLines(ip, sigma, upperThresh, lowerThresh, isDarkLine, doCorrectPosition, doEstimateWidth, doExtendLine, overlapOption);
+				} catch (CancellationException e) {
+					return;
+				}
+				showPreview(token, lines, detect.getJunctions(), detect.getUsedParamters());
+			}
+		});
+	}
+	
+	/*
+	 * Draws the preview if it was not cancelled in the meantime.
+	 */
+	private synchronized void showPreview(CancellationToken token, Lines lines, Junctions junctions, Options options) {
+		if (token != previewToken) {
+			return;
+		}
+		previewToken = null;
+		result = new ArrayList<Lines>();
+		resultJunction = new ArrayList<Junctions>();
+		result.add(lines);
+		resultJunction.add(junctions);
+		usedOptions = options;
+		displayContours();
+		result = new ArrayList<Lines>();
+		resultJunction = new ArrayList<Junctions>();
+	}
+	
+	private synchronized void cancelPreview() {
+		if (previewToken != null) {
+			previewToken.cancel();
+			previewToken = null;
+		}
+	}
+	
+	private synchronized void stopPreview() {
+		cancelPreview();
+		if (previewExecutor != null) {
+			previewExecutor.shutdown();
+			previewExecutor = null;
+		}
+		if (previewCanvas != null) {
+			previewCanvas.removeMouseListener(viewportListener);
+			previewCanvas.removeKeyListener(viewportListener.keys);
+			previewCanvas = null;
+		}
+		updateWheelListener();
+	}
+	
+	/*
+	 * Listens to the mouse wheel only while the visible region is previewed.
+	 * The listener is added to the window rather than to the canvas: the
+	 * window scrolls the image, and a wheel listener on the canvas would
+	 * keep the wheel events from reaching it.
+	 */
+	private synchronized void updateWheelListener() {
+		ImageWindow window = null;
+		if (previewCanvas != null && previewMode == PreviewMode.VISIBLE_REGION) {
+			window = imp.getWindow();
+		}
+		if (window == previewWindow) {
+			return;
+		}
+		if (previewWindow != null) {
+			previewWindow.removeMouseWheelListener(viewportListener);
+		}
+		if (window != null) {
+			window.addMouseWheelListener(viewportListener);
+		}
+		previewWindow = window;
+	}
+	
+	/*
+	 * Returns the region of the image that the preview processes: in the mode
+	 * VISIBLE_REGION the visible part of the image, enlarged by the size of
+	 * the largest kernel so that the lines within it are the same as for the
+	 * whole image. Returns null if the whole image is processed.
+	 */
+	private Rectangle getPreviewRegion() {
+		if (previewMode != PreviewMode.VISIBLE_REGION || previewCanvas == null) {
+			return null;
+		}
+		int halo = LineDetectionEngine.getKernelRadius(sigma);
+		Rectangle region = new Rectangle(previewCanvas.getSrcRect());
+		region.grow(halo, halo);
+		region = region.intersection(new Rectangle(0, 0, imp.getWidth(), imp.getHeight()));
+		if (region.width == imp.getWidth() && region.height == imp.getHeight()) {
+			return null;
+		}
+		return region;
+	}
+	
+	/*
+	 * Returns the factor by which the image is downsampled for the preview.
+	 * The factor is reduced if sigma would become smaller than the minimum
+	 * of 0.4 in the downsampled image.
+	 */
+	private int getPreviewDownsampling() {
+		int factor = 1;
+		if (previewMode == PreviewMode.DOWNSAMPLED_2X) {
+			factor = 2;
+		} else if (previewMode == PreviewMode.DOWNSAMPLED_4X) {
+			factor = 4;
+		}
+		while (factor > 1 && sigma / factor < 0.4) {
+			factor /= 2;
+		}
+		return factor;
+	}
+	
+	/*
+	 * Computes the preview again when the visible region of the image changes
+	 * by scrolling or zooming.
+	 */
+	private class ViewportListener extends MouseAdapter {
+		final KeyAdapter keys = new KeyAdapter() {
+			@Override
+			public void keyReleased(KeyEvent e) {
+				viewportChanged();
+			}
+		};
+		
+		@Override
+		public void mouseReleased(MouseEvent e) {
+			viewportChanged();
+		}
+		
+		@Override
+		public void mouseWheelMoved(MouseWheelEvent e) {
+			viewportChanged();
+		}
+	}
+	
+	private synchronized void viewportChanged() {
+		if (!isPreview || previewMode != PreviewMode.VISIBLE_REGION) {
+			return;
+		}
+		Rectangle region = getPreviewRegion();
+		if (region == null ? previewRegion != null : !region.equals(previewRegion)) {
+			startPreview(imp.getProcessor());
 		}
 	}
 	
@@ -663,6 +884,54 @@ public class Lines_ implements ExtendedPlugInFilter, DialogListener {
 	
 
 	
+	/*
+	 * Detects the lines in all frames of the stack in parallel. The results
+	 * are in frame order and their IDs do not depend on the scheduling.
+	 */
+	private void detectStack(ImageProcessor ip) {
+		final ImageStack stack = imp.getStack();
+		DetectionConfig config = new DetectionConfig(sigma, upperThresh,
+				lowerThresh, isDarkLine, doCorrectPosition, doEstimateWidth,
+				doExtendLine, overlapOption, verbose);
+		// The ROI of the image applies to all frames
+		final DetectionArea area = DetectionArea.of(ip, null, null,
+				LineDetectionEngine.getKernelRadius(sigma));
+		if (area.bounds.isEmpty()) {
+			return;
+		}
+		List<DetectionResult> frames;
+		try {
+			frames = new StackDetectionEngine().detect(
+					new StackDetectionEngine.FrameSource() {
+
+						@Override
+						public PixelData getFrame(int frame) {
+							return LineDetector.toPixelData(
+									stack.getProcessor(frame), area.bounds);
+						}
+
+						@Override
+						public int getWidth() {
+							return area.bounds.width;
+						}
+
+						@Override
+						public int getHeight() {
+							return area.bounds.height;
+						}
+					}, area.mask, stack.getSize(), config);
+		} catch (IllegalArgumentException e) {
+			IJ.error(e.getMessage());
+			return;
+		}
+		for (DetectionResult frame : frames) {
+			frame.translate(area.bounds.x, area.bounds.y);
+			result.add(frame.getLines());
+			resultJunction.add(frame.getJunctions());
+			usedOptions = frame.getUsedOptions();
+		}
+	}
+	
 	/**
 	 * Return the detected lines
 	 * @return ArrayList of lines for each frame.
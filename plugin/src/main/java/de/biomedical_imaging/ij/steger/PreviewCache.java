@@ -0,0 +1,93 @@
+/*
+ * #%L
+ * Ridge Detection plugin for ImageJ
+ * %%
+ * Copyright (C) 2014 - 2015 Thorsten Wagner (ImageJ java plugin), 1996-1998 Carsten Steger (original C code), 1999 R. Balasubramanian (detect lines code to incorporate within GRASP)
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package de.biomedical_imaging.ij.steger;
+
+import java.awt.Rectangle;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+
+import ij.process.ImageProcessor;
+
+/**
+ * Keeps the response of the line detector of the last image for the preview
+ * of {@link Lines_}. The response depends only on the image, the slice, the
+ * processed region and mask, the downsampling, sigma and the line mode, so if
+ * only the thresholds or the options of the later steps change, the preview
+ * just thresholds and links the line points again.
+ * The response is held by a soft reference, since it takes about 45 bytes
+ * per pixel.
+ */
+class PreviewCache {
+	private Object pixels = null;
+	private int slice;
+	private Rectangle region = null;
+	private byte[] mask = null;
+	private int downsampling;
+	private double sigma;
+	private boolean darkLine;
+	private SoftReference<ResponseField> response = null;
+
+	/**
+	 * @return the response of the line detector for the region of the image
+	 *         (or the whole image if the region is null), downsampled by the
+	 *         given factor, and the sigma and line mode of the configuration,
+	 *         computed if it is not cached. Line points are only searched
+	 *         within the mask of the downsampled region, if it is not null.
+	 * @throws IllegalArgumentException
+	 *             if sigma is out of range for the image
+	 * @throws java.util.concurrent.CancellationException
+	 *             if the token is cancelled while the response is computed
+	 */
+	synchronized ResponseField get(ImageProcessor ip, Rectangle region,
+			byte[] mask, int downsampling, DetectionConfig config,
+			CancellationToken cancel) {
+		ResponseField field = response == null ? null : response.get();
+		if (field == null || pixels != ip.getPixels()
+				|| slice != ip.getSliceNumber()
+				|| (region == null ? this.region != null : !region.equals(this.region))
+				|| !Arrays.equals(mask, this.mask)
+				|| this.downsampling != downsampling
+				|| sigma != config.getSigma()
+				|| darkLine != config.isDarkLine()) {
+			field = new LineDetectionEngine().computeResponse(
+					LineDetector.toPixelData(ip, region).downsample(downsampling),
+					mask, config, cancel);
+			pixels = ip.getPixels();
+			slice = ip.getSliceNumber();
+			this.region = region == null ? null : new Rectangle(region);
+			this.mask = mask;
+			this.downsampling = downsampling;
+			sigma = config.getSigma();
+			darkLine = config.isDarkLine();
+			response = new SoftReference<ResponseField>(field);
+		}
+		return field;
+	}
+
+	/**
+	 * Releases the cached response.
+	 */
+	synchronized void clear() {
+		pixels = null;
+		response = null;
+	}
+}
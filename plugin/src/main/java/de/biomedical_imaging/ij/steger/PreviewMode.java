@@ -21,8 +21,18 @@
  */
 package de.biomedical_imaging.ij.steger;
 
-public class Chord {
-	short r;   /* row coordinate of the chord */
-	short cb;  /* column coordinate of the start of the chord */
-	short ce;  /* column coordinate of the end of the chord */
+
+/**
+ * The part of the image on which {@link Lines_} computes its preview. The
+ * final detection always processes the whole image.
+ */
+public enum PreviewMode {
+	/** The whole image */
+	WHOLE_IMAGE,
+	/** The region that is visible in the image window, plus a halo of the kernel size */
+	VISIBLE_REGION,
+	/** The whole image, downsampled by 2 */
+	DOWNSAMPLED_2X,
+	/** The whole image, downsampled by 4 */
+	DOWNSAMPLED_4X;
 }
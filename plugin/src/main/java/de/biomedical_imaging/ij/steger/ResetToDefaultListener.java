@@ -75,6 +75,7 @@ public class ResetToDefaultListener implements ActionListener {
 		((Checkbox)gd.getCheckboxes().get(8)).setState(Lines_.addToRoiManagerDefault);
 		
 		((Choice)gd.getChoices().get(0)).select(0);
+		((Choice)gd.getChoices().get(1)).select(Lines_.previewModeDefault.name());
 		
 	}
 